@@ -24,6 +24,12 @@
 package org.brickred.socialauth;
 
 import java.io.Serializable;
+import java.util.Map;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.Response;
 
 /**
  * It maintains the state of provider. State shows that whether the connection
@@ -55,4 +61,88 @@ public class AbstractProvider implements Serializable {
 	protected void setProviderState(final boolean providerState) {
 		this.providerState = providerState;
 	}
+
+	/**
+	 * Returns the authentication strategy used by the provider, or null if
+	 * the provider does not use one. {@link ProviderEngine} makes the API
+	 * calls of all users through the strategy of a single instance.
+	 * 
+	 * @return the authentication strategy
+	 */
+	protected OAuthStrategyBase getOauthStrategy() {
+		return null;
+	}
+
+	/**
+	 * Writes the state of the authentication in progress to the given map,
+	 * so that {@link AuthFlow} can keep it in a pending auth store. By default
+	 * the state of the strategy is written.
+	 * 
+	 * @param state
+	 *            map to which the state is written
+	 * @return true if the state was written, false if the authentication can
+	 *         only be verified by this instance
+	 */
+	protected boolean savePendingState(final Map<String, String> state) {
+		OAuthStrategyBase strategy = getOauthStrategy();
+		return strategy != null && strategy.savePendingState(state);
+	}
+
+	/**
+	 * Restores the state written by {@link #savePendingState(Map)} in a new
+	 * instance created from the same configuration.
+	 * 
+	 * @param state
+	 *            the state of the authentication in progress
+	 * @throws Exception
+	 */
+	protected void restorePendingState(final Map<String, String> state)
+			throws Exception {
+		OAuthStrategyBase strategy = getOauthStrategy();
+		if (strategy == null) {
+			throw new SocialAuthException(
+					"Authentication state can not be restored by this provider");
+		}
+		strategy.restorePendingState(state);
+	}
+
+	/**
+	 * Makes an API call with the given strategy on behalf of the given user.
+	 * {@link ProviderEngine} calls it on one instance for all users, so it
+	 * must only use its arguments and the configuration, not the user
+	 * connected to this instance. Providers which change the request or
+	 * check the response in their api method do so here as well.
+	 * 
+	 * @param strategy
+	 *            the authentication strategy
+	 * @param accessGrant
+	 *            the access grant of the user
+	 * @param url
+	 *            URL of the API
+	 * @param methodType
+	 *            Method type can be GET, POST or PUT
+	 * @param params
+	 *            Parameters need to pass in request
+	 * @param headerParams
+	 *            Parameters need to pass as Header Parameters
+	 * @param body
+	 *            Request Body
+	 * @return Response object
+	 * @throws Exception
+	 */
+	protected Response api(final OAuthStrategyBase strategy,
+			final AccessGrant accessGrant, final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
+		try {
+			return strategy.executeFeed(accessGrant, url, methodType, params,
+					headerParams, body);
+		} catch (SocialAuthException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SocialAuthException(
+					"Error while making request to URL : " + url, e);
+		}
+	}
 }
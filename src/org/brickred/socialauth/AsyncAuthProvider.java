@@ -0,0 +1,226 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AsyncUtil;
+import org.brickred.socialauth.util.RequestThrottle;
+import org.brickred.socialauth.util.Response;
+
+/**
+ * Asynchronous view of an {@link AuthProvider}. Every call is run on an
+ * executor and returns a CompletableFuture, so that the calling thread, for
+ * example a servlet thread, is released while the provider responds.
+ * 
+ * Provider instances keep per user state and are not thread safe, hence calls
+ * made through one AsyncAuthProvider should not overlap. Chain dependent calls
+ * with thenCompose instead of starting them together.
+ * 
+ * When a {@link RequestThrottle} is enabled for the provider, calls which
+ * make requests with the access grant are started once the throttle lets
+ * them through, so that they do not wait on a thread of the executor.
+ * 
+ */
+public class AsyncAuthProvider {
+
+	private final AuthProvider provider;
+	private final Executor executor;
+
+	/**
+	 * Creates an asynchronous view which runs calls on the default executor of
+	 * {@link AsyncUtil}.
+	 * 
+	 * @param provider
+	 *            the provider to which calls are delegated
+	 */
+	public AsyncAuthProvider(final AuthProvider provider) {
+		this(provider, AsyncUtil.getDefaultExecutor());
+	}
+
+	/**
+	 * 
+	 * @param provider
+	 *            the provider to which calls are delegated
+	 * @param executor
+	 *            the executor on which calls are run
+	 */
+	public AsyncAuthProvider(final AuthProvider provider,
+			final Executor executor) {
+		if (provider == null) {
+			throw new IllegalArgumentException("Provider is null");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor is null");
+		}
+		this.provider = provider;
+		this.executor = executor;
+	}
+
+	/**
+	 * Retrieves the provider to which calls are delegated.
+	 * 
+	 * @return the provider
+	 */
+	public AuthProvider getProvider() {
+		return provider;
+	}
+
+	/**
+	 * Verifies the user when the external provider redirects back to our
+	 * application.
+	 * 
+	 * @param requestParams
+	 *            Request parameters received from the provider
+	 * @return future of the user profile
+	 */
+	public CompletableFuture<Profile> verifyResponse(
+			final Map<String, String> requestParams) {
+		return AsyncUtil.supply(new Callable<Profile>() {
+			@Override
+			public Profile call() throws Exception {
+				return provider.verifyResponse(requestParams);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Retrieves the user profile.
+	 * 
+	 * @return future of the user profile
+	 */
+	public CompletableFuture<Profile> getUserProfile() {
+		return supply(new Callable<Profile>() {
+			@Override
+			public Profile call() throws Exception {
+				return provider.getUserProfile();
+			}
+		});
+	}
+
+	/**
+	 * Gets the list of contacts of the user.
+	 * 
+	 * @return future of the contact list
+	 */
+	public CompletableFuture<List<Contact>> getContactList() {
+		return supply(new Callable<List<Contact>>() {
+			@Override
+			public List<Contact> call() throws Exception {
+				return provider.getContactList();
+			}
+		});
+	}
+
+	/**
+	 * Updates the status on the chosen provider if available.
+	 * 
+	 * @param msg
+	 *            Message to be shown as user's status
+	 * @return future which completes when the status is updated
+	 */
+	public CompletableFuture<Void> updateStatus(final String msg) {
+		return supply(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				provider.updateStatus(msg);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Makes OAuth signed HTTP request to a given URL for making any provider
+	 * specific calls.
+	 * 
+	 * @param url
+	 *            URL to make HTTP request.
+	 * @param methodType
+	 *            Method type can be GET, POST or PUT
+	 * @param params
+	 *            Any additional parameters whose signature need to compute.
+	 * @param headerParams
+	 *            Any additional parameters need to pass as Header Parameters
+	 * @param body
+	 *            Request Body
+	 * @return future of the response
+	 */
+	public CompletableFuture<Response> api(final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body) {
+		return supply(new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return provider.api(url, methodType, params, headerParams, body);
+			}
+		});
+	}
+
+	/**
+	 * Updates the image and message on the chosen provider if available.
+	 * 
+	 * @param message
+	 *            Status Message
+	 * @param fileName
+	 *            Image file name
+	 * @param inputStream
+	 *            Input Stream of image
+	 * @return future of the response
+	 */
+	public CompletableFuture<Response> uploadImage(final String message,
+			final String fileName, final InputStream inputStream) {
+		return supply(new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return provider.uploadImage(message, fileName, inputStream);
+			}
+		});
+	}
+
+	/**
+	 * Retrieves the AccessGrant object.
+	 * 
+	 * @return AccessGrant object.
+	 */
+	public AccessGrant getAccessGrant() {
+		return provider.getAccessGrant();
+	}
+
+	private <T> CompletableFuture<T> supply(final Callable<T> call) {
+		RequestThrottle throttle = RequestThrottle.getThrottle(provider
+				.getProviderId());
+		if (throttle != null) {
+			return throttle.supply(provider.getAccessGrant(), call, executor);
+		}
+		return AsyncUtil.supply(call, executor);
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.PendingAuthStore;
+import org.brickred.socialauth.util.SerializationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the state of one authentication flow started with
+ * {@link ConcurrentSocialAuthManager#getAuthenticationUrl(String, String)}.
+ * The caller keeps the flow, for example in the HTTP session, and passes it
+ * to {@link ConcurrentSocialAuthManager#connect(AuthFlow, java.util.Map)} when
+ * the provider redirects back to the application. A flow can be connected
+ * only once.
+ * 
+ * Flows are also kept in the {@link PendingAuthStore} of the manager, keyed
+ * by {@link #getKey()}, so that the callback can be handled without the flow
+ * object, possibly on another node. The store keeps only the per-flow state:
+ * the provider id, the id of the config, the permission and the state written
+ * by the provider, like the request token or the OAuth 2 state. The provider
+ * is created again from the config registered with that id, or from the
+ * config of the manager handling the callback.
+ * 
+ */
+public class AuthFlow implements Serializable {
+
+	private static final long serialVersionUID = -2360529731437616237L;
+	private static final String STATE = "state";
+	private static final String OAUTH_TOKEN = "oauth_token";
+	private static final String PROVIDER_ID = "socialauth.provider";
+	private static final String CONFIG_ID = "socialauth.config";
+	private static final String PERMISSION = "socialauth.permission";
+	private static final Logger logger = LoggerFactory
+			.getLogger(AuthFlow.class);
+	private final String providerId;
+	private final AuthProvider authProvider;
+	private final String url;
+	private final boolean connected;
+	private final String key;
+	private final Permission permission;
+	private final AtomicBoolean completed = new AtomicBoolean();
+
+	AuthFlow(final String providerId, final AuthProvider authProvider,
+			final String url, final boolean connected,
+			final Permission permission) {
+		this.providerId = providerId;
+		this.authProvider = authProvider;
+		this.url = url;
+		this.connected = connected;
+		this.key = connected ? null : getKey(url);
+		this.permission = permission;
+	}
+
+	/**
+	 * Retrieves the provider id
+	 * 
+	 * @return the provider id
+	 */
+	public String getProviderId() {
+		return providerId;
+	}
+
+	/**
+	 * Retrieves the URL where the user needs to be redirected. It is the
+	 * success URL if the provider was already connected.
+	 * 
+	 * @return the URL string which will be used for authentication with
+	 *         provider
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Returns True if the provider was already connected when the flow was
+	 * started, so no authentication with the provider is needed.
+	 * 
+	 * @return provider connected status
+	 */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 * Retrieves the key of the flow, which is the value of the "state" or
+	 * "oauth_token" parameter of the redirection URL. The provider sends the
+	 * same value back in the callback.
+	 * 
+	 * @return the flow key, or null if the provider does not send one
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	AuthProvider getAuthProvider() {
+		return authProvider;
+	}
+
+	boolean complete() {
+		return completed.compareAndSet(false, true);
+	}
+
+	/**
+	 * Stores the state of the flow in the given store, if it has a key and
+	 * the provider can resume it in another instance.
+	 */
+	void store(final PendingAuthStore store, final SocialAuthConfig config)
+			throws Exception {
+		if (store == null || key == null) {
+			return;
+		}
+		Map<String, String> state = new HashMap<String, String>();
+		if (!(authProvider instanceof AbstractProvider)
+				|| !((AbstractProvider) authProvider).savePendingState(state)) {
+			logger.debug("Provider " + providerId
+					+ " can not resume the flow, it is not stored");
+			return;
+		}
+		state.put(PROVIDER_ID, providerId);
+		if (config != null && config.getConfigId() != null) {
+			state.put(CONFIG_ID, config.getConfigId());
+		}
+		if (permission != null) {
+			state.put(PERMISSION, permission.toString());
+		}
+		store.put(key, state);
+	}
+
+	/**
+	 * Removes the flow from the given store, so that it can not be connected
+	 * from another node.
+	 */
+	void unstore(final PendingAuthStore store) throws Exception {
+		if (store != null && key != null) {
+			store.remove(key);
+		}
+	}
+
+	/**
+	 * Removes the flow whose key is in the callback parameters from the given
+	 * store, and creates its provider again. The config registered with the
+	 * id kept in the flow is used, otherwise the given config.
+	 * 
+	 * @return the flow, or null if there is no pending flow for the callback
+	 */
+	static AuthFlow remove(final PendingAuthStore store,
+			final Map<String, String> requestParams,
+			final SocialAuthConfig defaultConfig) throws Exception {
+		if (store == null || requestParams == null) {
+			return null;
+		}
+		String key = requestParams.get(STATE);
+		if (key == null) {
+			key = requestParams.get(OAUTH_TOKEN);
+		}
+		if (key == null) {
+			return null;
+		}
+		Map<String, String> state = store.remove(key);
+		if (state == null || state.get(PROVIDER_ID) == null) {
+			return null;
+		}
+		SocialAuthConfig config = SocialAuthConfig.getConfig(state
+				.get(CONFIG_ID));
+		if (config == null) {
+			config = defaultConfig;
+		}
+		if (config == null) {
+			logger.warn("No config to resume the flow of "
+					+ state.get(PROVIDER_ID));
+			return null;
+		}
+		String id = state.get(PROVIDER_ID);
+		AuthProvider provider = SocialAuthManager.getProviderInstance(config,
+				id);
+		if (!(provider instanceof AbstractProvider)) {
+			return null;
+		}
+		Permission p = SerializationUtil.toPermission(state.get(PERMISSION));
+		if (p != null) {
+			provider.setPermission(p);
+		}
+		((AbstractProvider) provider).restorePendingState(state);
+		return new AuthFlow(id, provider, null, false, p);
+	}
+
+	private static String getKey(final String url) {
+		int idx = url == null ? -1 : url.indexOf('?');
+		if (idx == -1) {
+			return null;
+		}
+		String token = null;
+		for (String pair : url.substring(idx + 1).split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq == -1) {
+				continue;
+			}
+			String name = pair.substring(0, eq);
+			if (STATE.equals(name)) {
+				return HttpUtil.decodeURIComponent(pair.substring(eq + 1));
+			} else if (OAUTH_TOKEN.equals(name)) {
+				token = HttpUtil.decodeURIComponent(pair.substring(eq + 1));
+			}
+		}
+		return token;
+	}
+}
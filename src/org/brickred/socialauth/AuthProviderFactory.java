@@ -28,18 +28,14 @@ package org.brickred.socialauth;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
-import org.brickred.socialauth.exception.SocialAuthConfigurationException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.OAuthConfig;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 
 /**
@@ -55,7 +51,6 @@ public class AuthProviderFactory
 	private static String propFileName = "oauth_consumer.properties";
 	private static Map<String, Class<?>> providerMap;
 	private static Map<String, String> domainMap;
-	private static final Logger logger = LoggerFactory.getLogger(AuthProviderFactory.class);
 
 	static {
 		providerMap = new HashMap<String, Class<?>>();
@@ -201,7 +196,6 @@ public class AuthProviderFactory
 	{
 		Class<?> obj = providerMap.get(id);
 		props.setProperty("id", id);
-		AuthProvider provider;
 		OAuthConfig conf;
 
 		if (obj == null) {
@@ -233,16 +227,7 @@ public class AuthProviderFactory
 			conf.setId(id);
 		}
 
-		try {
-			Constructor<?> cons = obj.getConstructor(OAuthConfig.class);
-			provider = (AuthProvider) cons.newInstance(conf);
-		} catch (NoSuchMethodException me) {
-			logger.warn(obj.getName() + " does not implement a constructor " + obj.getName() + "(OAuthConfig providerConfig)");
-			provider = (AuthProvider) obj.newInstance();
-		} catch (Exception e) {
-			throw new SocialAuthConfigurationException(e);
-		}
-		return provider;
+		return ProviderFactory.forClass(obj).newInstance(conf);
 	}
 
 	/**
@@ -255,6 +240,7 @@ public class AuthProviderFactory
 	 */
 	public static void registerProvider(final String pname, final Class<?> clazz)
 	{
+		ProviderFactory.forClass(clazz);
 		providerMap.put(pname, clazz);
 	}
 }
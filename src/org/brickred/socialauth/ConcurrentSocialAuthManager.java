@@ -0,0 +1,363 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brickred.socialauth.exception.SocialAuthConfigurationException;
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.exception.SocialAuthManagerStateException;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.InMemoryPendingAuthStore;
+import org.brickred.socialauth.util.PendingAuthStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread safe variant of {@link SocialAuthManager}, which can be shared by
+ * concurrent request threads. Instead of keeping the provider being connected
+ * in the manager, {@link #getAuthenticationUrl(String, String)} returns an
+ * {@link AuthFlow} which holds the state of that flow, so one instance can
+ * serve many concurrent flows. Connected providers are kept in a concurrent
+ * map.
+ * 
+ */
+public class ConcurrentSocialAuthManager implements Serializable {
+
+	private static final long serialVersionUID = 4297384569412738823L;
+	private static final Logger logger = LoggerFactory
+			.getLogger(ConcurrentSocialAuthManager.class);
+	private final ConcurrentMap<String, AuthProvider> providersMap;
+	private final ConcurrentMap<String, Permission> permissionsMap;
+	private volatile SocialAuthConfig socialAuthConfig;
+	private volatile String currentProviderId;
+	private transient volatile PendingAuthStore pendingAuthStore;
+
+	public ConcurrentSocialAuthManager() {
+		providersMap = new ConcurrentHashMap<String, AuthProvider>();
+		permissionsMap = new ConcurrentHashMap<String, Permission>();
+	}
+
+	/**
+	 * 
+	 * @param socialAuthConfig
+	 *            the SocialAuthConfig object which contains the configuration
+	 *            for providers
+	 * @throws Exception
+	 */
+	public ConcurrentSocialAuthManager(final SocialAuthConfig socialAuthConfig)
+			throws Exception {
+		this();
+		setSocialAuthConfig(socialAuthConfig);
+	}
+
+	/**
+	 * Retrieves the socialauth config
+	 * 
+	 * @return the socialauth config
+	 */
+	public SocialAuthConfig getSocialAuthConfig() {
+		return socialAuthConfig;
+	}
+
+	/**
+	 * Updates the socialauth config
+	 * 
+	 * @param socialAuthConfig
+	 *            the SocialAuthConfig object which contains the configuration
+	 *            for providers
+	 * @throws Exception
+	 */
+	public void setSocialAuthConfig(final SocialAuthConfig socialAuthConfig)
+			throws Exception {
+		logger.debug("Setting socialauth config");
+		if (socialAuthConfig == null) {
+			throw new SocialAuthConfigurationException(
+					"SocialAuthConfig is null");
+		} else {
+			if (!socialAuthConfig.isConfigSetup()) {
+				throw new SocialAuthConfigurationException(
+						"Configuration is not provided. Call load() method of SocialAuthConfig class to set up configuration");
+			}
+		}
+		this.socialAuthConfig = socialAuthConfig;
+	}
+
+	/**
+	 * Starts an authentication flow with the provider.
+	 * 
+	 * @param id
+	 *            the provider id
+	 * @param successUrl
+	 *            success page URL on which provider will redirect after
+	 *            authentication
+	 * @return the flow, which holds the URL where the user needs to be
+	 *         redirected
+	 * @throws Exception
+	 */
+	public AuthFlow getAuthenticationUrl(final String id,
+			final String successUrl) throws Exception {
+		return getAuthenticationUrl(id, successUrl, null);
+	}
+
+	/**
+	 * Starts an authentication flow with the provider.
+	 * 
+	 * @param id
+	 *            the provider id
+	 * @param successUrl
+	 *            success page URL on which provider will redirect after
+	 *            authentication
+	 * @param permission
+	 *            Permission object which can be Permission.AUHTHENTICATE_ONLY,
+	 *            Permission.ALL, Permission.DEFAULT
+	 * @return the flow, which holds the URL where the user needs to be
+	 *         redirected
+	 * @throws Exception
+	 */
+	public AuthFlow getAuthenticationUrl(final String id,
+			final String successUrl, final Permission permission)
+			throws Exception {
+		logger.debug("Getting Authentication URL for provider " + id
+				+ ", with success url : " + successUrl);
+		SocialAuthConfig config = socialAuthConfig;
+		if (config == null) {
+			throw new SocialAuthConfigurationException(
+					"SocialAuth configuration is null.");
+		}
+		AuthProvider connected = providersMap.get(id);
+		if (connected != null) {
+			return new AuthFlow(id, connected, successUrl, true, null);
+		}
+		AuthProvider provider = SocialAuthManager.getProviderInstance(config,
+				id);
+		Permission p = permissionsMap.get(id);
+		if (p != null) {
+			provider.setPermission(p);
+		}
+		if (permission != null) {
+			provider.setPermission(permission);
+		}
+		String url = provider.getLoginRedirectURL(successUrl);
+		AuthFlow flow = new AuthFlow(id, provider, url, false,
+				permission != null ? permission : p);
+		flow.store(getPendingAuthStore(), config);
+		return flow;
+	}
+
+	/**
+	 * Verifies the user when the external provider redirects back to our
+	 * application. The flow is looked up in the pending auth store by the
+	 * "state" or "oauth_token" request parameter, so this works only for
+	 * providers which send one of them back.
+	 * 
+	 * @param requestParams
+	 *            the request parameters
+	 * @return object of the required auth provider. You can call various
+	 *         function of this provider to get the information.
+	 * @throws Exception
+	 */
+	public AuthProvider connect(final Map<String, String> requestParams)
+			throws Exception {
+		AuthFlow flow = AuthFlow.remove(getPendingAuthStore(),
+				requestParams, socialAuthConfig);
+		if (flow == null) {
+			throw new SocialAuthManagerStateException();
+		}
+		return connectFlow(flow, requestParams);
+	}
+
+	/**
+	 * Verifies the user when the external provider redirects back to our
+	 * application, and completes the given flow.
+	 * 
+	 * @param flow
+	 *            the flow returned by getAuthenticationUrl
+	 * @param requestParams
+	 *            the request parameters
+	 * @return object of the required auth provider. You can call various
+	 *         function of this provider to get the information.
+	 * @throws Exception
+	 */
+	public AuthProvider connect(final AuthFlow flow,
+			final Map<String, String> requestParams) throws Exception {
+		if (flow != null) {
+			flow.unstore(getPendingAuthStore());
+		}
+		return connectFlow(flow, requestParams);
+	}
+
+	private AuthProvider connectFlow(final AuthFlow flow,
+			final Map<String, String> requestParams) throws Exception {
+		if (flow == null || !flow.complete()) {
+			throw new SocialAuthManagerStateException();
+		}
+		String id = flow.getProviderId();
+		logger.info("Connecting provider : " + id);
+		AuthProvider provider = flow.getAuthProvider();
+		if (!flow.isConnected()) {
+			provider.verifyResponse(requestParams);
+			providersMap.put(id, provider);
+		}
+		currentProviderId = id;
+		return provider;
+	}
+
+	/**
+	 * Creates the provider with given access grant
+	 * 
+	 * @param accessGrant
+	 *            the access grant object which contains
+	 * @return the auth provider
+	 * @throws Exception
+	 */
+	public AuthProvider connect(final AccessGrant accessGrant) throws Exception {
+		if (accessGrant.getProviderId() == null || accessGrant.getKey() == null) {
+			throw new SocialAuthException("access grant is not valid");
+		}
+		logger.debug("Connecting provider : " + accessGrant.getProviderId()
+				+ ", from given access grant");
+		AuthProvider provider = SocialAuthManager.getProviderInstance(
+				socialAuthConfig, accessGrant.getProviderId());
+		provider.setAccessGrant(accessGrant);
+		providersMap.put(accessGrant.getProviderId(), provider);
+		currentProviderId = accessGrant.getProviderId();
+		return provider;
+	}
+
+	/**
+	 * It disconnects with provider
+	 * 
+	 * @param id
+	 *            the provider id
+	 * @return True if provider is disconnected or false if not.
+	 */
+	public boolean disconnectProvider(final String id) {
+		AuthProvider p = providersMap.remove(id);
+		if (p != null) {
+			p.logout();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns True if given provider is connected otherwise returns False
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @return provider connected status
+	 */
+	public boolean isConnected(final String providerId) {
+		return providersMap.containsKey(providerId);
+	}
+
+	/**
+	 * Retrieves the instance of given provider
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @return the instance of given provider
+	 */
+	public AuthProvider getProvider(final String providerId) {
+		return providersMap.get(providerId);
+	}
+
+	/**
+	 * Returns the array list of connected providers ids.
+	 * 
+	 * @return List of connected providers ids string.
+	 */
+	public List<String> getConnectedProvidersIds() {
+		return new ArrayList<String>(providersMap.keySet());
+	}
+
+	/**
+	 * Retrieves the current auth provider instance which is last connected.
+	 * 
+	 * @return AuthProvider object
+	 */
+	public AuthProvider getCurrentAuthProvider() {
+		String id = currentProviderId;
+		if (id != null) {
+			return providersMap.get(id);
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the store of pending flows
+	 * 
+	 * @return the pending auth store
+	 */
+	public PendingAuthStore getPendingAuthStore() {
+		PendingAuthStore store = pendingAuthStore;
+		if (store == null) {
+			synchronized (this) {
+				store = pendingAuthStore;
+				if (store == null) {
+					store = new InMemoryPendingAuthStore();
+					pendingAuthStore = store;
+				}
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Updates the store of pending flows. By default flows are kept in memory;
+	 * a store shared by several nodes allows the callback to reach any node.
+	 * 
+	 * @param pendingAuthStore
+	 *            the pending auth store
+	 */
+	public void setPendingAuthStore(final PendingAuthStore pendingAuthStore) {
+		if (pendingAuthStore == null) {
+			throw new IllegalArgumentException("PendingAuthStore is null");
+		}
+		this.pendingAuthStore = pendingAuthStore;
+	}
+
+	/**
+	 * Sets the permission for given provider. It is used by the flows which
+	 * are started afterwards.
+	 * 
+	 * @param providerId
+	 *            the provider id for which permission need to be set
+	 * @param permission
+	 *            Permission object which can be Permission.AUHTHENTICATE_ONLY,
+	 *            Permission.ALL, Permission.DEFAULT
+	 */
+	public void setPermission(final String providerId,
+			final Permission permission) {
+		permissionsMap.put(providerId, permission);
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the contacts of a user, fetching pages from the provider
+ * lazily as the contacts are consumed. Only the current page is held in
+ * memory, so large address books can be processed in constant memory.
+ * 
+ * Since an <code>Iterator</code> can not throw checked exceptions, a failure
+ * while fetching a page is thrown from {@link #hasNext()} or {@link #next()}
+ * as an <code>IllegalStateException</code> whose cause is the original
+ * exception. Use {@link #toList()} to get the failure as it is.
+ * 
+ * A cursor is not thread safe and can be traversed only once.
+ * 
+ */
+public class ContactCursor implements Iterator<Contact> {
+
+	/**
+	 * Reads the pages of contacts from a provider. Implementations keep track
+	 * of the position of the next page.
+	 */
+	public interface PageReader {
+
+		/**
+		 * Fetches the next page of contacts.
+		 * 
+		 * @return contacts of the next page, or null if there are no more
+		 *         pages
+		 * @throws Exception
+		 */
+		List<Contact> nextPage() throws Exception;
+	}
+
+	private final PageReader reader;
+	private List<Contact> page;
+	private int index;
+	private boolean done;
+
+	/**
+	 * @param reader
+	 *            reader which fetches the pages of contacts
+	 */
+	public ContactCursor(final PageReader reader) {
+		this.reader = reader;
+		this.page = Collections.emptyList();
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			return fetch();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(
+					"Failed to fetch the next page of contacts", e);
+		}
+	}
+
+	@Override
+	public Contact next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.get(index++);
+	}
+
+	/**
+	 * Returns a sequential stream over the remaining contacts. Pages are
+	 * fetched as the stream is consumed.
+	 * 
+	 * @return stream of contacts
+	 */
+	public Stream<Contact> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Fetches all remaining pages and returns the contacts in one list.
+	 * 
+	 * @return List of remaining contacts
+	 * @throws Exception
+	 *             exception thrown by the provider while fetching a page
+	 */
+	public List<Contact> toList() throws Exception {
+		List<Contact> list = new ArrayList<Contact>();
+		while (fetch()) {
+			list.addAll(page.subList(index, page.size()));
+			index = page.size();
+		}
+		return list;
+	}
+
+	private boolean fetch() throws Exception {
+		while (index >= page.size()) {
+			if (done) {
+				return false;
+			}
+			page = Collections.emptyList();
+			index = 0;
+			List<Contact> next;
+			try {
+				next = reader.nextPage();
+			} catch (Exception e) {
+				done = true;
+				throw e;
+			}
+			if (next == null) {
+				done = true;
+			} else {
+				page = next;
+			}
+		}
+		return true;
+	}
+}
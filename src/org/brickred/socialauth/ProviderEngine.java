@@ -0,0 +1,189 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth;
+
+import java.util.List;
+import java.util.Map;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.OAuthConfig;
+import org.brickred.socialauth.util.Response;
+
+/**
+ * Makes the calls of one provider on behalf of any number of users. The
+ * engine holds the provider configuration and a single authentication
+ * strategy, and each call is given the access grant of the user. An
+ * application can keep only the AccessGrant of a user instead of a connected
+ * provider instance, and use the engine returned by
+ * {@link SocialAuthConfig#getProviderEngine(String)} for every request.
+ * <p>
+ * API calls go through the shared strategy and the request and response
+ * handling of the provider. Calls which need the
+ * provider specific parsing, like the profile or the contacts, use a
+ * provider instance created for the call and dropped afterwards. Providers
+ * which do not expose a strategy use such an instance for API calls too.
+ * </p>
+ * 
+ * The engine does not change after it is created and can be used by many
+ * threads at the same time.
+ * 
+ */
+public final class ProviderEngine {
+
+	private final String providerId;
+	private final OAuthConfig config;
+	private final ProviderFactory factory;
+	private final AbstractProvider template;
+	private final OAuthStrategyBase strategy;
+
+	ProviderEngine(final SocialAuthConfig socialAuthConfig,
+			final String providerId) throws Exception {
+		this.providerId = providerId;
+		this.config = socialAuthConfig.getProviderConfig(providerId);
+		this.factory = ProviderFactory.forClass(config.getProviderImplClass());
+		AuthProvider provider = factory.newInstance(config);
+		if (provider instanceof AbstractProvider) {
+			template = (AbstractProvider) provider;
+			strategy = template.getOauthStrategy();
+		} else {
+			template = null;
+			strategy = null;
+		}
+	}
+
+	/**
+	 * Returns the id of the provider.
+	 * 
+	 * @return the provider id
+	 */
+	public String getProviderId() {
+		return providerId;
+	}
+
+	/**
+	 * Makes an HTTP request to the provider API on behalf of the user.
+	 * 
+	 * @param accessGrant
+	 *            the access grant of the user
+	 * @param url
+	 *            URL of the API
+	 * @param methodType
+	 *            Method type can be GET, POST or PUT
+	 * @param params
+	 *            Parameters need to pass in request
+	 * @param headerParams
+	 *            Parameters need to pass as Header Parameters
+	 * @param body
+	 *            Request Body
+	 * @return Response object
+	 * @throws Exception
+	 */
+	public Response api(final AccessGrant accessGrant, final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
+		checkGrant(accessGrant);
+		if (strategy == null) {
+			return newProvider(accessGrant).api(url, methodType, params,
+					headerParams, body);
+		}
+		return template.api(strategy, accessGrant, url, methodType, params,
+				headerParams, body);
+	}
+
+	/**
+	 * Retrieves the profile of the user.
+	 * 
+	 * @param accessGrant
+	 *            the access grant of the user
+	 * @return Profile object containing the profile information
+	 * @throws Exception
+	 */
+	public Profile getUserProfile(final AccessGrant accessGrant)
+			throws Exception {
+		return newProvider(accessGrant).getUserProfile();
+	}
+
+	/**
+	 * Retrieves the contacts of the user.
+	 * 
+	 * @param accessGrant
+	 *            the access grant of the user
+	 * @return List of contacts
+	 * @throws Exception
+	 */
+	public List<Contact> getContactList(final AccessGrant accessGrant)
+			throws Exception {
+		return newProvider(accessGrant).getContactList();
+	}
+
+	/**
+	 * Updates the status of the user.
+	 * 
+	 * @param accessGrant
+	 *            the access grant of the user
+	 * @param msg
+	 *            the status message
+	 * @throws Exception
+	 */
+	public void updateStatus(final AccessGrant accessGrant, final String msg)
+			throws Exception {
+		newProvider(accessGrant).updateStatus(msg);
+	}
+
+	/**
+	 * Creates a provider instance connected with the given access grant, for
+	 * calls which the engine does not offer. The instance is not shared and
+	 * should not be kept longer than needed.
+	 * 
+	 * @param accessGrant
+	 *            the access grant of the user
+	 * @return the connected provider
+	 * @throws Exception
+	 */
+	public AuthProvider newProvider(final AccessGrant accessGrant)
+			throws Exception {
+		checkGrant(accessGrant);
+		AuthProvider provider = factory.newInstance(config);
+		provider.setAccessGrant(accessGrant);
+		return provider;
+	}
+
+	private void checkGrant(final AccessGrant accessGrant)
+			throws SocialAuthException {
+		if (accessGrant == null) {
+			throw new SocialAuthException("Access grant is null");
+		}
+		if (accessGrant.getProviderId() != null
+				&& !providerId.equals(accessGrant.getProviderId())) {
+			throw new SocialAuthException("Access grant of "
+					+ accessGrant.getProviderId()
+					+ " can not be used with provider " + providerId);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brickred.socialauth.exception.SocialAuthConfigurationException;
+import org.brickred.socialauth.util.OAuthConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates instances of a provider implementation. The constructor taking an
+ * OAuthConfig, or the no argument constructor if there is none, is looked up
+ * once per class and kept as a method handle, so that creating a provider
+ * for every login or reconnect does not repeat the reflective lookup.
+ * 
+ */
+final class ProviderFactory {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(ProviderFactory.class);
+
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(
+			AuthProvider.class, OAuthConfig.class);
+
+	private static final ConcurrentMap<Class<?>, ProviderFactory> factories = new ConcurrentHashMap<Class<?>, ProviderFactory>();
+
+	private final MethodHandle constructor;
+	private final Exception error;
+
+	private ProviderFactory(final MethodHandle constructor,
+			final Exception error) {
+		this.constructor = constructor;
+		this.error = error;
+	}
+
+	/**
+	 * Returns the factory of the given provider implementation, resolving its
+	 * constructor on the first call.
+	 * 
+	 * @param providerClass
+	 *            the provider implementation class
+	 * @return the factory for the class
+	 */
+	static ProviderFactory forClass(final Class<?> providerClass) {
+		ProviderFactory factory = factories.get(providerClass);
+		if (factory == null) {
+			factory = resolve(providerClass);
+			ProviderFactory existing = factories.putIfAbsent(providerClass,
+					factory);
+			if (existing != null) {
+				factory = existing;
+			}
+		}
+		return factory;
+	}
+
+	private static ProviderFactory resolve(final Class<?> providerClass) {
+		MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		MethodHandle handle;
+		try {
+			handle = lookup.findConstructor(providerClass,
+					MethodType.methodType(void.class, OAuthConfig.class));
+		} catch (NoSuchMethodException me) {
+			logger.warn(providerClass.getName()
+					+ " does not implement a constructor "
+					+ providerClass.getName() + "(OAuthConfig providerConfig)");
+			try {
+				handle = lookup.findConstructor(providerClass,
+						MethodType.methodType(void.class));
+				handle = MethodHandles.dropArguments(handle, 0,
+						OAuthConfig.class);
+			} catch (Exception e) {
+				return new ProviderFactory(null, e);
+			}
+		} catch (Exception e) {
+			return new ProviderFactory(null, e);
+		}
+		if (!AuthProvider.class.isAssignableFrom(providerClass)) {
+			return new ProviderFactory(null, new ClassCastException(providerClass.getName()
+							+ " does not implement AuthProvider"));
+		}
+		return new ProviderFactory(handle.asType(CONSTRUCTOR_TYPE), null);
+	}
+
+	/**
+	 * Creates a new instance of the provider.
+	 * 
+	 * @param config
+	 *            the configuration of the provider
+	 * @return new instance of the provider
+	 * @throws Exception
+	 *             SocialAuthConfigurationException if the class cannot be
+	 *             instantiated or its constructor fails
+	 */
+	AuthProvider newInstance(final OAuthConfig config) throws Exception {
+		if (constructor == null) {
+			throw new SocialAuthConfigurationException(error);
+		}
+		try {
+			return (AuthProvider) constructor.invokeExact(config);
+		} catch (Exception e) {
+			throw new SocialAuthConfigurationException(e);
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new SocialAuthConfigurationException(t);
+		}
+	}
+}
@@ -34,12 +34,19 @@ import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.brickred.socialauth.exception.SocialAuthConfigurationException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.GuardedHttpTransport;
+import org.brickred.socialauth.util.HttpClientTransport;
+import org.brickred.socialauth.util.HttpTransport;
 import org.brickred.socialauth.util.HttpUtil;
 import org.brickred.socialauth.util.OAuthConfig;
+import org.brickred.socialauth.util.PooledHttpTransport;
+import org.brickred.socialauth.util.RetryingHttpTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,7 +71,19 @@ public class SocialAuthConfig implements Serializable {
 	private boolean configSetup;
 	private static final Logger logger = LoggerFactory.getLogger(SocialAuthConfig.class);
 	private static SocialAuthConfig DEFAULT = new SocialAuthConfig();
+	private static final ConcurrentMap<String, SocialAuthConfig> registry = new ConcurrentHashMap<String, SocialAuthConfig>();
 	private boolean isConfigLoaded;
+	private String configId;
+	private transient volatile ConcurrentMap<String, ProviderEngine> engines;
+
+	/**
+	 * Id of the default config
+	 */
+	public static final String DEFAULT_ID = "default";
+
+	static {
+		register(DEFAULT_ID, DEFAULT);
+	}
 
 	/**
 	 * Returns the instance of SocialAuthConfig
@@ -75,6 +94,41 @@ public class SocialAuthConfig implements Serializable {
 		return DEFAULT;
 	}
 
+	/**
+	 * Registers a config under the given id. Serialized managers refer to
+	 * their config by this id, so the same id should be registered on every
+	 * node which deserializes them.
+	 * 
+	 * @param id
+	 *            the config id
+	 * @param config
+	 *            the config
+	 */
+	public static void register(final String id, final SocialAuthConfig config) {
+		config.configId = id;
+		registry.put(id, config);
+	}
+
+	/**
+	 * Returns the config registered under the given id.
+	 * 
+	 * @param id
+	 *            the config id
+	 * @return the config, or null if no config is registered with the id
+	 */
+	public static SocialAuthConfig getConfig(final String id) {
+		return id == null ? null : registry.get(id);
+	}
+
+	/**
+	 * Returns the id under which this config is registered.
+	 * 
+	 * @return the config id, or null if this config is not registered
+	 */
+	public String getConfigId() {
+		return configId;
+	}
+
 	public SocialAuthConfig() {
 		providersImplMap = new HashMap<String, Class<?>>();
 		providersImplMap.put(Constants.FACEBOOK,
@@ -148,6 +202,7 @@ public class SocialAuthConfig implements Serializable {
 	public void addProvider(final String pname, final Class<?> clazz)
 			throws Exception {
 		logger.debug("Registering a provider " + pname);
+		ProviderFactory.forClass(clazz);
 		providersImplMap.put(pname, clazz);
 	}
 
@@ -211,6 +266,7 @@ public class SocialAuthConfig implements Serializable {
 			this.applicationProperties = properties;
 			registerProviders();
 			loadProvidersConfig();
+			setTransport();
 			setProxy();
 			String timeout = null;
 			if (applicationProperties
@@ -227,6 +283,10 @@ public class SocialAuthConfig implements Serializable {
 				}
 				HttpUtil.setConnectionTimeout(time);
 			}
+			int readTimeout = getTimeout(Constants.HTTP_READ_TIMEOUT);
+			if (readTimeout > 0) {
+				HttpUtil.setReadTimeout(readTimeout);
+			}
 			isConfigLoaded = true;
 		}
 	}
@@ -280,6 +340,10 @@ public class SocialAuthConfig implements Serializable {
 		config.setId(providerId);
 		logger.debug("Adding provider configuration :" + config);
 		providersConfig.put(providerId, config);
+		clearProviderEngines();
+		if (config.getProviderImplClass() != null) {
+			ProviderFactory.forClass(config.getProviderImplClass());
+		}
 		if (!providersImplMap.containsKey(providerId)) {
 			if (config.getProviderImplClass() != null) {
 				providersImplMap.put(providerId, config.getProviderImplClass());
@@ -301,6 +365,11 @@ public class SocialAuthConfig implements Serializable {
 				OAuthConfig conf = new OAuthConfig(cKey, cSecret);
 				conf.setId(key);
 				conf.setProviderImplClass(providersImplMap.get(key));
+				if (conf.getProviderImplClass() != null) {
+					ProviderFactory.forClass(conf.getProviderImplClass());
+				}
+				conf.setReadTimeout(getTimeout(value + "."
+						+ Constants.HTTP_READ_TIMEOUT));
 				if (applicationProperties.containsKey(value
 						+ ".custom_permissions")) {
 					String perms = applicationProperties.getProperty(
@@ -315,6 +384,7 @@ public class SocialAuthConfig implements Serializable {
 						+ " is not available");
 			}
 		}
+		clearProviderEngines();
 		configSetup = true;
 	}
 
@@ -356,10 +426,117 @@ public class SocialAuthConfig implements Serializable {
 		return config;
 	}
 
+	/**
+	 * Returns the engine which makes the calls of the given provider for all
+	 * users, creating it on the first call. The engine is created again
+	 * when the configuration of the provider changes.
+	 * 
+	 * @param id
+	 *            the provider id
+	 * @return the engine of the provider
+	 * @throws Exception
+	 */
+	public ProviderEngine getProviderEngine(final String id) throws Exception {
+		ConcurrentMap<String, ProviderEngine> map = engines;
+		if (map == null) {
+			synchronized (this) {
+				map = engines;
+				if (map == null) {
+					map = new ConcurrentHashMap<String, ProviderEngine>();
+					engines = map;
+				}
+			}
+		}
+		ProviderEngine engine = map.get(id);
+		if (engine == null) {
+			engine = new ProviderEngine(this, id);
+			ProviderEngine existing = map.putIfAbsent(id, engine);
+			if (existing != null) {
+				engine = existing;
+			}
+		}
+		return engine;
+	}
+
+	private void clearProviderEngines() {
+		ConcurrentMap<String, ProviderEngine> map = engines;
+		if (map != null) {
+			map.clear();
+		}
+	}
+
 	protected boolean isConfigSetup() {
 		return configSetup;
 	}
 
+	/**
+	 * Installs the transport built from the "http.transport", "http.isolation"
+	 * and "http.retry" properties. HttpUtil has a single transport, so these
+	 * settings are global: the transport is rebuilt from the default one on
+	 * every load, the last loaded configuration applies to all of them, and a
+	 * transport installed with HttpUtil.setTransport is replaced.
+	 */
+	private void setTransport() {
+		String transport = null;
+		if (applicationProperties.containsKey(Constants.HTTP_TRANSPORT)) {
+			transport = applicationProperties.getProperty(
+					Constants.HTTP_TRANSPORT).trim();
+		}
+		HttpTransport httpTransport;
+		if (Constants.HTTP2_TRANSPORT.equalsIgnoreCase(transport)) {
+			logger.info("Using HTTP/2 transport");
+			httpTransport = new HttpClientTransport();
+		} else {
+			if (transport != null && !transport.isEmpty()
+					&& !"default".equalsIgnoreCase(transport)) {
+				logger.warn("Unknown http transport " + transport
+						+ " in configuration, using the default transport");
+			}
+			httpTransport = new PooledHttpTransport();
+		}
+		if (Boolean.parseBoolean(applicationProperties.getProperty(
+				Constants.HTTP_ISOLATION, "false").trim())) {
+			logger.info("Isolating providers with bulkheads and circuit breakers");
+			httpTransport = new GuardedHttpTransport(httpTransport);
+		}
+		// retries go around the circuit breakers, so that every attempt is
+		// counted and no retry is made once a breaker opens
+		if (Boolean.parseBoolean(applicationProperties.getProperty(
+				Constants.HTTP_RETRY, "false").trim())) {
+			logger.info("Retrying GET requests which fail with a transient error");
+			httpTransport = new RetryingHttpTransport(httpTransport);
+		}
+		HttpTransport previous = HttpUtil.getTransport();
+		HttpUtil.setTransport(httpTransport);
+		close(previous);
+	}
+
+	private static void close(final HttpTransport transport) {
+		HttpTransport t = transport;
+		if (t instanceof RetryingHttpTransport) {
+			t = ((RetryingHttpTransport) t).getTransport();
+		}
+		if (t instanceof GuardedHttpTransport) {
+			t = ((GuardedHttpTransport) t).getTransport();
+		}
+		if (t instanceof HttpClientTransport) {
+			((HttpClientTransport) t).close();
+		}
+	}
+
+	private int getTimeout(final String key) {
+		String value = applicationProperties.getProperty(key);
+		if (value == null || value.trim().isEmpty()) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException ne) {
+			logger.warn(key + " is not an integer in configuration");
+			return 0;
+		}
+	}
+
 	private void setProxy() {
 		String proxyHost = null;
 		String proxyPort = null;
@@ -25,8 +25,10 @@
 
 package org.brickred.socialauth;
 
-import java.io.Serializable;
-import java.lang.reflect.Constructor;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -37,6 +39,8 @@ import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.exception.SocialAuthManagerStateException;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.OAuthConfig;
+import org.brickred.socialauth.util.PendingAuthStore;
+import org.brickred.socialauth.util.SerializationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,16 +52,22 @@ import org.slf4j.LoggerFactory;
  * @author tarunn@brickred.com
  * 
  */
-public class SocialAuthManager implements Serializable {
+public class SocialAuthManager implements Externalizable {
 
 	private static final long serialVersionUID = 1620459182486095613L;
-	private final Logger logger = LoggerFactory.getLogger(SocialAuthManager.class);
+	private static final int VERSION = 1;
+	private static final int PROVIDER_GRANT = 1;
+	private static final int PROVIDER_OBJECT = 2;
+	private static final Logger logger = LoggerFactory
+			.getLogger(SocialAuthManager.class);
 	private AuthProvider authProvider;
 	private String providerId;
 	private String currentProviderId;
 	private Map<String, AuthProvider> providersMap;
 	private SocialAuthConfig socialAuthConfig;
 	private Map<String, Permission> permissionsMap;
+	private transient PendingAuthStore pendingAuthStore;
+	private transient Map<String, AccessGrant> restoredGrants;
 
 	public SocialAuthManager() {
 		providersMap = new HashMap<String, AuthProvider>();
@@ -94,6 +104,7 @@ public class SocialAuthManager implements Serializable {
 			}
 		}
 		this.socialAuthConfig = socialAuthConfig;
+		restoreProviders();
 	}
 
 	/**
@@ -160,6 +171,9 @@ public class SocialAuthManager implements Serializable {
 				authProvider.setPermission(permission);
 			}
 			url = authProvider.getLoginRedirectURL(successUrl);
+			new AuthFlow(id, authProvider, url, false,
+					permission != null ? permission : permissionsMap.get(id))
+					.store(pendingAuthStore, socialAuthConfig);
 		}
 		return url;
 	}
@@ -176,8 +190,14 @@ public class SocialAuthManager implements Serializable {
 	 */
 	public AuthProvider connect(final Map<String, String> requestParams)
 			throws Exception {
+		AuthFlow flow = AuthFlow.remove(pendingAuthStore, requestParams,
+				socialAuthConfig);
 		if (providerId == null || authProvider == null) {
-			throw new SocialAuthManagerStateException();
+			if (flow == null) {
+				throw new SocialAuthManagerStateException();
+			}
+			providerId = flow.getProviderId();
+			authProvider = flow.getAuthProvider();
 		}
 		logger.info("Connecting provider : " + providerId);
 		if (providersMap.get(providerId) == null) {
@@ -230,17 +250,18 @@ public class SocialAuthManager implements Serializable {
 	}
 
 	/**
-	 * Returns True if given provider is connected otherwise returns False
+	 * Returns True if given provider is connected otherwise returns False. A
+	 * deserialized manager whose config is not registered reports its
+	 * providers as connected only once the config is set with
+	 * {@link #setSocialAuthConfig(SocialAuthConfig)}, as they cannot be
+	 * created before.
 	 * 
 	 * @param providerId
 	 *            the provider id
 	 * @return provider connected status
 	 */
 	public boolean isConnected(final String providerId) {
-		if (providersMap.containsKey(providerId)) {
-			return true;
-		}
-		return false;
+		return providersMap.containsKey(providerId);
 	}
 
 	/**
@@ -255,20 +276,25 @@ public class SocialAuthManager implements Serializable {
 	}
 
 	private AuthProvider getProviderInstance(final String id) throws Exception {
+		return getProviderInstance(socialAuthConfig, id);
+	}
+
+	/**
+	 * Creates a new instance of the given provider from the configuration.
+	 * 
+	 * @param socialAuthConfig
+	 *            the socialauth config
+	 * @param id
+	 *            the provider id
+	 * @return new instance of the provider
+	 * @throws Exception
+	 */
+	static AuthProvider getProviderInstance(
+			final SocialAuthConfig socialAuthConfig, final String id)
+			throws Exception {
 		OAuthConfig config = socialAuthConfig.getProviderConfig(id);
-		Class<?> obj = config.getProviderImplClass();
-		AuthProvider provider;
-		try {
-			Constructor<?> cons = obj.getConstructor(OAuthConfig.class);
-			provider = (AuthProvider) cons.newInstance(config);
-		} catch (NoSuchMethodException me) {
-			logger.warn(obj.getName() + " does not implement a constructor "
-					+ obj.getName() + "(Poperties props)");
-			provider = (AuthProvider) obj.newInstance();
-		} catch (Exception e) {
-			throw new SocialAuthConfigurationException(e);
-		}
-		return provider;
+		return ProviderFactory.forClass(config.getProviderImplClass())
+				.newInstance(config);
 	}
 
 	/**
@@ -296,6 +322,148 @@ public class SocialAuthManager implements Serializable {
 		return null;
 	}
 
+	/**
+	 * Writes only the per-user state: the id of the config, the access grants
+	 * of the connected providers, permissions and the provider whose
+	 * authentication is in progress. The config is referenced by the id under
+	 * which it is registered with {@link SocialAuthConfig#register}. Providers
+	 * which do not keep an access grant, like OpenId, are written as objects.
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		out.writeByte(VERSION);
+		String configId = socialAuthConfig == null ? null : socialAuthConfig
+				.getConfigId();
+		if (socialAuthConfig != null && configId == null) {
+			logger.warn("SocialAuthConfig is not registered, it has to be set again after deserialization");
+		}
+		SerializationUtil.writeString(out, configId);
+		SerializationUtil.writeString(out, currentProviderId);
+		SerializationUtil.writeVarInt(out, permissionsMap.size());
+		for (Map.Entry<String, Permission> entry : permissionsMap.entrySet()) {
+			SerializationUtil.writeString(out, entry.getKey());
+			SerializationUtil.writePermission(out, entry.getValue());
+		}
+		Map<String, Object> providers = new HashMap<String, Object>();
+		for (Map.Entry<String, AuthProvider> entry : providersMap.entrySet()) {
+			AccessGrant grant = entry.getValue().getAccessGrant();
+			if (grant != null && grant.getKey() != null) {
+				providers.put(entry.getKey(), grant);
+			} else {
+				providers.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (restoredGrants != null) {
+			for (Map.Entry<String, AccessGrant> entry : restoredGrants
+					.entrySet()) {
+				if (!providers.containsKey(entry.getKey())) {
+					providers.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		SerializationUtil.writeVarInt(out, providers.size());
+		for (Map.Entry<String, Object> entry : providers.entrySet()) {
+			SerializationUtil.writeString(out, entry.getKey());
+			if (entry.getValue() instanceof AccessGrant) {
+				out.writeByte(PROVIDER_GRANT);
+				((AccessGrant) entry.getValue()).writeExternal(out);
+			} else {
+				out.writeByte(PROVIDER_OBJECT);
+				out.writeObject(entry.getValue());
+			}
+		}
+		SerializationUtil.writeString(out, providerId);
+		out.writeBoolean(providerId != null && authProvider != null);
+		if (providerId != null && authProvider != null) {
+			out.writeObject(authProvider);
+		}
+	}
+
+	/**
+	 * Reads the state written by {@link #writeExternal(ObjectOutput)}. The
+	 * providers are created again from their access grants with the
+	 * registered config. If the config is not registered, they are created
+	 * when {@link #setSocialAuthConfig(SocialAuthConfig)} is called, and are
+	 * not reported as connected until then.
+	 */
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException,
+			ClassNotFoundException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported SocialAuthManager version : "
+					+ version);
+		}
+		socialAuthConfig = SocialAuthConfig.getConfig(SerializationUtil
+				.readString(in));
+		currentProviderId = SerializationUtil.readString(in);
+		int count = SerializationUtil.readVarInt(in);
+		for (int i = 0; i < count; i++) {
+			String id = SerializationUtil.readString(in);
+			permissionsMap.put(id, SerializationUtil.readPermission(in));
+		}
+		count = SerializationUtil.readVarInt(in);
+		for (int i = 0; i < count; i++) {
+			String id = SerializationUtil.readString(in);
+			int type = in.readUnsignedByte();
+			if (type == PROVIDER_GRANT) {
+				AccessGrant grant = new AccessGrant();
+				grant.readExternal(in);
+				if (restoredGrants == null) {
+					restoredGrants = new HashMap<String, AccessGrant>();
+				}
+				restoredGrants.put(id, grant);
+			} else if (type == PROVIDER_OBJECT) {
+				providersMap.put(id, (AuthProvider) in.readObject());
+			} else {
+				throw new IOException("Unknown provider type : " + type);
+			}
+		}
+		providerId = SerializationUtil.readString(in);
+		if (in.readBoolean()) {
+			authProvider = (AuthProvider) in.readObject();
+		}
+		try {
+			restoreProviders();
+		} catch (Exception e) {
+			throw new IOException("Failed to restore providers", e);
+		}
+	}
+
+	private void restoreProviders() throws Exception {
+		if (restoredGrants == null || socialAuthConfig == null) {
+			return;
+		}
+		for (Map.Entry<String, AccessGrant> entry : restoredGrants.entrySet()) {
+			AuthProvider provider = getProviderInstance(entry.getKey());
+			provider.setAccessGrant(entry.getValue());
+			providersMap.put(entry.getKey(), provider);
+		}
+		restoredGrants = null;
+	}
+
+	/**
+	 * Retrieves the store of pending flows
+	 * 
+	 * @return the pending auth store, or null if none is set
+	 */
+	public PendingAuthStore getPendingAuthStore() {
+		return pendingAuthStore;
+	}
+
+	/**
+	 * Updates the store of pending flows. When a store is set, the state of
+	 * the provider is saved in it by getAuthenticationUrl, so that connect
+	 * can be called on another manager instance, possibly on another node
+	 * sharing the store.
+	 * 
+	 * @param pendingAuthStore
+	 *            the pending auth store
+	 */
+	public void setPendingAuthStore(final PendingAuthStore pendingAuthStore) {
+		this.pendingAuthStore = pendingAuthStore;
+	}
+
 	/**
 	 * Sets the permission for given provider.
 	 * 
@@ -0,0 +1,394 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AsyncUtil;
+import org.brickred.socialauth.util.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes the access tokens of providers before they expire. Tracked
+ * providers are kept in a queue ordered by the time their token should be
+ * refreshed. A single daemon thread waits for the earliest one and hands
+ * every provider due within the batch window to the worker executor, with at
+ * most the configured number of refreshes running at the same time. The
+ * listener is told about every refreshed grant so that it can be stored
+ * again.
+ * <p>
+ * The expiry is read from the {@link Constants#EXPIRES_AT} attribute of the
+ * grant, which OAuth2 sets when the token is issued. Grants which only carry
+ * {@link Constants#EXPIRES} are assumed to have been issued when tracked.
+ * </p>
+ * 
+ */
+public class TokenRefreshScheduler {
+
+	/**
+	 * Time before the expiry at which a token is refreshed, unless given to
+	 * the constructor
+	 */
+	public static final long DEFAULT_REFRESH_AHEAD = 5 * 60 * 1000L;
+
+	/**
+	 * Tokens due for refresh within this time of each other are refreshed in
+	 * the same batch
+	 */
+	public static final long BATCH_WINDOW = 30 * 1000L;
+
+	/**
+	 * Number of refreshes running at the same time, unless given to the
+	 * constructor
+	 */
+	public static final int DEFAULT_CONCURRENCY = 4;
+
+	/**
+	 * Time after which a failed refresh is tried again, as long as the token
+	 * has not expired by then
+	 */
+	public static final long RETRY_DELAY = 60 * 1000L;
+
+	/**
+	 * Receives the outcome of the refreshes.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called when the access token of the provider has been refreshed.
+		 * 
+		 * @param provider
+		 *            the provider, which already uses the new grant
+		 * @param grant
+		 *            the new access grant
+		 */
+		public void onRefresh(RefreshableProvider provider, AccessGrant grant);
+
+		/**
+		 * Called when a refresh failed. The refresh is tried again after
+		 * {@link TokenRefreshScheduler#RETRY_DELAY} if the token is still
+		 * valid by then, otherwise the provider is no longer tracked.
+		 * 
+		 * @param provider
+		 *            the provider
+		 * @param e
+		 *            the cause of the failure
+		 */
+		public void onFailure(RefreshableProvider provider, Throwable e);
+	}
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(TokenRefreshScheduler.class);
+
+	private final Listener listener;
+	private final Executor executor;
+	private final Semaphore permits;
+	private final long refreshAhead;
+	private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>();
+	private final Map<RefreshableProvider, Entry> entries = new IdentityHashMap<RefreshableProvider, Entry>();
+	private final Thread thread;
+	private long sequence;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates a scheduler which refreshes tokens on the default executor of
+	 * {@link AsyncUtil}.
+	 * 
+	 * @param listener
+	 *            listener notified of the refreshed grants
+	 */
+	public TokenRefreshScheduler(final Listener listener) {
+		this(listener, AsyncUtil.getDefaultExecutor(), DEFAULT_CONCURRENCY,
+				DEFAULT_REFRESH_AHEAD);
+	}
+
+	/**
+	 * 
+	 * @param listener
+	 *            listener notified of the refreshed grants
+	 * @param executor
+	 *            executor on which the refresh requests are made
+	 * @param concurrency
+	 *            maximum number of refreshes running at the same time
+	 * @param refreshAhead
+	 *            time in milliseconds before the expiry at which a token is
+	 *            refreshed
+	 */
+	public TokenRefreshScheduler(final Listener listener,
+			final Executor executor, final int concurrency,
+			final long refreshAhead) {
+		if (listener == null || executor == null) {
+			throw new IllegalArgumentException(
+					"Listener and executor are required");
+		}
+		if (concurrency < 1) {
+			throw new IllegalArgumentException(
+					"Concurrency must be at least 1");
+		}
+		this.listener = listener;
+		this.executor = executor;
+		this.permits = new Semaphore(concurrency);
+		this.refreshAhead = refreshAhead;
+		thread = new AsyncUtil.DaemonThreadFactory("socialauth-token-refresh")
+				.newThread(new Runnable() {
+					@Override
+					public void run() {
+						dispatch();
+					}
+				});
+		thread.start();
+	}
+
+	/**
+	 * Starts tracking the access token of the given provider, replacing any
+	 * earlier schedule for it. Providers whose grant has no refresh token or
+	 * no expiry are not tracked. A token is refreshed the refresh ahead time
+	 * before it expires, but not before half of its remaining lifetime has
+	 * passed, so that short lived tokens are not refreshed in a loop. An
+	 * expired token is refreshed at once.
+	 * 
+	 * @param provider
+	 *            the connected provider
+	 * @return true if the provider is tracked
+	 */
+	public boolean track(final RefreshableProvider provider) {
+		return track(provider, false);
+	}
+
+	private boolean track(final RefreshableProvider provider,
+			final boolean refreshed) {
+		AccessGrant grant = provider.getAccessGrant();
+		long expiresAt = getExpiresAt(grant);
+		long now = System.currentTimeMillis();
+		if (expiresAt < 0
+				|| grant.getAttribute(Constants.REFRESH_TOKEN) == null
+				|| (refreshed && expiresAt <= now)) {
+			// a refresh which returns an expired token is not repeated
+			untrack(provider);
+			return false;
+		}
+		long refreshAt = Math.max(expiresAt - refreshAhead, now
+				+ (expiresAt - now) / 2);
+		schedule(provider, refreshAt, expiresAt);
+		return true;
+	}
+
+	/**
+	 * Stops tracking the given provider. A refresh already running still
+	 * completes, but the provider is not scheduled again.
+	 * 
+	 * @param provider
+	 *            the provider
+	 */
+	public void untrack(final RefreshableProvider provider) {
+		synchronized (queue) {
+			Entry entry = entries.remove(provider);
+			if (entry != null) {
+				queue.remove(entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of tracked providers.
+	 * 
+	 * @return number of tracked providers
+	 */
+	public int size() {
+		synchronized (queue) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Stops the scheduler. Refreshes already handed to the executor still
+	 * complete.
+	 */
+	public void shutdown() {
+		running = false;
+		synchronized (queue) {
+			queue.clear();
+			entries.clear();
+			queue.notifyAll();
+		}
+		thread.interrupt();
+	}
+
+	private static long getExpiresAt(final AccessGrant grant) {
+		if (grant == null) {
+			return -1;
+		}
+		Object expiresAt = grant.getAttribute(Constants.EXPIRES_AT);
+		if (expiresAt instanceof Number) {
+			return ((Number) expiresAt).longValue();
+		}
+		Object expires = grant.getAttribute(Constants.EXPIRES);
+		if (expires instanceof Number) {
+			long at = System.currentTimeMillis()
+					+ ((Number) expires).longValue() * 1000L;
+			grant.setAttribute(Constants.EXPIRES_AT, at);
+			return at;
+		}
+		return -1;
+	}
+
+	private void schedule(final RefreshableProvider provider,
+			final long refreshAt, final long expiresAt) {
+		synchronized (queue) {
+			if (!running) {
+				return;
+			}
+			Entry old = entries.get(provider);
+			if (old != null) {
+				queue.remove(old);
+			}
+			Entry entry = new Entry(provider, refreshAt, expiresAt, sequence++);
+			entries.put(provider, entry);
+			queue.add(entry);
+			if (queue.peek() == entry) {
+				queue.notifyAll();
+			}
+		}
+	}
+
+	private void dispatch() {
+		while (running) {
+			List<Entry> batch = new ArrayList<Entry>();
+			try {
+				synchronized (queue) {
+					Entry head = queue.peek();
+					long now = System.currentTimeMillis();
+					if (head == null) {
+						queue.wait();
+						continue;
+					}
+					if (head.refreshAt > now) {
+						queue.wait(head.refreshAt - now);
+						continue;
+					}
+					while (head != null && head.refreshAt <= now + BATCH_WINDOW) {
+						batch.add(queue.poll());
+						head = queue.peek();
+					}
+				}
+				logger.debug("Refreshing " + batch.size() + " access tokens");
+				for (Entry entry : batch) {
+					permits.acquire();
+					refresh(entry);
+				}
+			} catch (InterruptedException e) {
+				if (running) {
+					logger.warn("Token refresh thread interrupted", e);
+				}
+				return;
+			}
+		}
+	}
+
+	private void refresh(final Entry entry) {
+		AsyncUtil.supply(new Callable<AccessGrant>() {
+			@Override
+			public AccessGrant call() throws Exception {
+				return entry.provider.refreshAccessGrant();
+			}
+		}, executor).whenComplete(new BiConsumer<AccessGrant, Throwable>() {
+			@Override
+			public void accept(final AccessGrant grant, final Throwable t) {
+				permits.release();
+				synchronized (queue) {
+					if (entries.get(entry.provider) != entry) {
+						return;
+					}
+				}
+				if (t == null) {
+					notifyRefresh(entry.provider, grant);
+					track(entry.provider, true);
+				} else {
+					notifyFailure(entry.provider, t);
+					long retryAt = System.currentTimeMillis() + RETRY_DELAY;
+					if (retryAt < entry.expiresAt) {
+						schedule(entry.provider, retryAt, entry.expiresAt);
+					} else {
+						untrack(entry.provider);
+					}
+				}
+			}
+		});
+	}
+
+	private void notifyRefresh(final RefreshableProvider provider,
+			final AccessGrant grant) {
+		try {
+			listener.onRefresh(provider, grant);
+		} catch (RuntimeException e) {
+			logger.warn("Token refresh listener failed", e);
+		}
+	}
+
+	private void notifyFailure(final RefreshableProvider provider,
+			final Throwable t) {
+		logger.warn("Failed to refresh access token of "
+				+ provider.getProviderId(), t);
+		try {
+			listener.onFailure(provider, t);
+		} catch (RuntimeException e) {
+			logger.warn("Token refresh listener failed", e);
+		}
+	}
+
+	private static class Entry implements Comparable<Entry> {
+		final RefreshableProvider provider;
+		final long refreshAt;
+		final long expiresAt;
+		final long sequence;
+
+		Entry(final RefreshableProvider provider, final long refreshAt,
+				final long expiresAt, final long sequence) {
+			this.provider = provider;
+			this.refreshAt = refreshAt;
+			this.expiresAt = expiresAt;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(final Entry o) {
+			if (refreshAt != o.refreshAt) {
+				return refreshAt < o.refreshAt ? -1 : 1;
+			}
+			return sequence < o.sequence ? -1 : sequence > o.sequence ? 1 : 0;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.oauthstrategy;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AsyncUtil;
+import org.brickred.socialauth.util.RequestThrottle;
+import org.brickred.socialauth.util.Response;
+
+/**
+ * Asynchronous view of an {@link OAuthStrategyBase}. The token exchange and
+ * feed calls are run on an executor and return a CompletableFuture.
+ * 
+ * When a {@link RequestThrottle} is enabled for the provider of the access
+ * grant, feed calls are started once the throttle lets them through, so
+ * that they do not wait on a thread of the executor.
+ * 
+ */
+public class AsyncOAuthStrategy {
+
+	private final OAuthStrategyBase strategy;
+	private final Executor executor;
+
+	/**
+	 * Creates an asynchronous view which runs calls on the default executor of
+	 * AsyncUtil.
+	 * 
+	 * @param strategy
+	 *            the strategy to which calls are delegated
+	 */
+	public AsyncOAuthStrategy(final OAuthStrategyBase strategy) {
+		this(strategy, AsyncUtil.getDefaultExecutor());
+	}
+
+	/**
+	 * 
+	 * @param strategy
+	 *            the strategy to which calls are delegated
+	 * @param executor
+	 *            the executor on which calls are run
+	 */
+	public AsyncOAuthStrategy(final OAuthStrategyBase strategy,
+			final Executor executor) {
+		if (strategy == null) {
+			throw new IllegalArgumentException("Strategy is null");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor is null");
+		}
+		this.strategy = strategy;
+		this.executor = executor;
+	}
+
+	/**
+	 * Verifies the user and get access token
+	 * 
+	 * @param requestParams
+	 *            request parameters, received from the provider
+	 * @return future of the AccessGrant
+	 */
+	public CompletableFuture<AccessGrant> verifyResponse(
+			final Map<String, String> requestParams) {
+		return AsyncUtil.supply(new Callable<AccessGrant>() {
+			@Override
+			public AccessGrant call() throws Exception {
+				return strategy.verifyResponse(requestParams);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Verifies the user and get access token
+	 * 
+	 * @param requestParams
+	 *            request parameters, received from the provider
+	 * @param methodType
+	 *            method type of the access token request
+	 * @return future of the AccessGrant
+	 */
+	public CompletableFuture<AccessGrant> verifyResponse(
+			final Map<String, String> requestParams, final String methodType) {
+		return AsyncUtil.supply(new Callable<AccessGrant>() {
+			@Override
+			public AccessGrant call() throws Exception {
+				return strategy.verifyResponse(requestParams, methodType);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Makes HTTP GET request to a given URL.
+	 * 
+	 * @param url
+	 *            URL to make HTTP request.
+	 * @return future of the response
+	 */
+	public CompletableFuture<Response> executeFeed(final String url) {
+		return supply(new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return strategy.executeFeed(url);
+			}
+		});
+	}
+
+	/**
+	 * Makes HTTP request to a given URL.
+	 * 
+	 * @param url
+	 *            URL to make HTTP request.
+	 * @param methodType
+	 *            Method type can be GET, POST or PUT
+	 * @param params
+	 *            request parameters
+	 * @param headerParams
+	 *            Parameters need to pass as Header Parameters
+	 * @param body
+	 *            Request Body
+	 * @return future of the response
+	 */
+	public CompletableFuture<Response> executeFeed(final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body) {
+		return supply(new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return strategy.executeFeed(url, methodType, params,
+						headerParams, body);
+			}
+		});
+	}
+
+	private <T> CompletableFuture<T> supply(final Callable<T> call) {
+		AccessGrant grant = strategy.getAccessGrant();
+		RequestThrottle throttle = grant == null ? null : RequestThrottle
+				.getThrottle(grant.getProviderId());
+		if (throttle != null) {
+			return throttle.supply(grant, call, executor);
+		}
+		return AsyncUtil.supply(call, executor);
+	}
+}
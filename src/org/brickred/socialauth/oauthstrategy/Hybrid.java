@@ -25,9 +25,7 @@
 
 package org.brickred.socialauth.oauthstrategy;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.Map;
 
 import org.brickred.socialauth.Permission;
@@ -36,6 +34,7 @@ import org.brickred.socialauth.exception.SocialAuthConfigurationException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.HttpTransport;
 import org.brickred.socialauth.util.HttpUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
@@ -49,7 +48,7 @@ import org.slf4j.LoggerFactory;
 public class Hybrid implements OAuthStrategyBase {
 
 	private static final long serialVersionUID = -1331047094086589944L;
-	private final Logger logger = LoggerFactory.getLogger(Hybrid.class);
+	private static final Logger logger = LoggerFactory.getLogger(Hybrid.class);
 
 	private AccessGrant requestToken;
 	private AccessGrant accessToken;
@@ -69,27 +68,9 @@ public class Hybrid implements OAuthStrategyBase {
 
 	@Override
 	public String getLoginRedirectURL(final String successUrl) throws Exception {
-		String associationURL = OpenIdConsumer.getAssociationURL(endpoints
-				.get(Constants.OAUTH_REQUEST_TOKEN_URL));
-		Response r = HttpUtil.doHttpRequest(associationURL,
-				MethodType.GET.toString(), null, null);
-		StringBuffer sb = new StringBuffer();
-		String assocHandle = "";
-		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(
-					r.getInputStream(), "UTF-8"));
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				sb.append(line).append("\n");
-				if ("assoc_handle:".equals(line.substring(0, 13))) {
-					assocHandle = line.substring(13);
-					break;
-				}
-			}
-			logger.debug("ASSOCCIATION : " + assocHandle);
-		} catch (Exception exc) {
-			throw new SocialAuthException("Failed to read response from  ");
-		}
+		String assocHandle = OpenIdConsumer.getAssociationHandle(
+				endpoints.get(Constants.OAUTH_REQUEST_TOKEN_URL),
+				oauth.getTransport());
 
 		String realm;
 		if (successUrl.indexOf("/", 9) > 0) {
@@ -177,6 +158,16 @@ public class Hybrid implements OAuthStrategyBase {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
+		return executeFeed(accessToken, url, methodType, params, headerParams,
+				body);
+	}
+
+	@Override
+	public Response executeFeed(final AccessGrant accessToken,
+			final String url, final String methodType,
+			final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
 		Response response = null;
 		if (accessToken == null) {
 			throw new SocialAuthException(
@@ -218,6 +209,22 @@ public class Hybrid implements OAuthStrategyBase {
 		this.accessToken = accessGrant;
 	}
 
+	@Override
+	public AccessGrant getAccessGrant() {
+		return accessToken;
+	}
+
+	@Override
+	public boolean savePendingState(final Map<String, String> state) {
+		// the response carries everything else that is needed
+		return providerState;
+	}
+
+	@Override
+	public void restorePendingState(final Map<String, String> state) {
+		providerState = true;
+	}
+
 	@Override
 	public void setAccessTokenParameterName(
 			final String accessTokenParameterName) {
@@ -231,6 +238,17 @@ public class Hybrid implements OAuthStrategyBase {
 		providerState = false;
 	}
 
+	@Override
+	public void setTransport(final HttpTransport transport) {
+		oauth.setTransport(transport);
+	}
+
+	@Override
+	public AccessGrant refreshAccessGrant() throws Exception {
+		throw new SocialAuthException(
+				"Refreshing access token is not supported by Hybrid");
+	}
+
 	@Override
 	public Response uploadImage(final String url, final String methodType,
 			final Map<String, String> params,
@@ -33,9 +33,11 @@ import org.brickred.socialauth.exception.ProviderStateException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.HttpTransport;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.OAuthConsumer;
+import org.brickred.socialauth.util.RequestTokenPool;
 import org.brickred.socialauth.util.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,7 +46,7 @@ public class OAuth1 implements OAuthStrategyBase
 {
 
 	private static final long serialVersionUID = -447820298609650347L;
-	private final Logger logger = LoggerFactory.getLogger(OAuth1.class);
+	private static final Logger logger = LoggerFactory.getLogger(OAuth1.class);
 
 	private AccessGrant accessToken;
 	private AccessGrant requestToken;
@@ -73,7 +75,12 @@ public class OAuth1 implements OAuthStrategyBase
 		if (scope != null) {
 			reqUrl += scope;
 		}
-		requestToken = oauth.getRequestToken(reqUrl, successUrl);
+		RequestTokenPool pool = RequestTokenPool.getPool(providerId, oauth.getConfig(), reqUrl, successUrl);
+		if (pool != null) {
+			requestToken = pool.take();
+		} else {
+			requestToken = oauth.getRequestToken(reqUrl, successUrl);
+		}
 		String authUrl = endpoints.get(Constants.OAUTH_AUTHORIZATION_URL);
 		StringBuilder urlBuffer = oauth.buildAuthUrl(authUrl, requestToken, successUrl);
 		logger.info("Redirection to following URL should happen : " + urlBuffer.toString());
@@ -127,6 +134,12 @@ public class OAuth1 implements OAuthStrategyBase
 
 	@Override
 	public Response executeFeed(final String urlStr, final String methodType, final Map<String, String> params, final Map<String, String> headerParams, final String body) throws Exception
+	{
+		return executeFeed(accessToken, urlStr, methodType, params, headerParams, body);
+	}
+
+	@Override
+	public Response executeFeed(final AccessGrant accessToken, final String urlStr, final String methodType, final Map<String, String> params, final Map<String, String> headerParams, final String body) throws Exception
 	{
 		Response response = null;
 		if (accessToken == null) {
@@ -160,6 +173,38 @@ public class OAuth1 implements OAuthStrategyBase
 		this.accessToken = accessGrant;
 	}
 
+	@Override
+	public AccessGrant getAccessGrant()
+	{
+		return accessToken;
+	}
+
+	@Override
+	public boolean savePendingState(final Map<String, String> state)
+	{
+		if (!providerState || requestToken == null || requestToken.getKey() == null) {
+			return false;
+		}
+		state.put(Constants.OAUTH_TOKEN, requestToken.getKey());
+		if (requestToken.getSecret() != null) {
+			state.put(Constants.OAUTH_TOKEN_SECRET, requestToken.getSecret());
+		}
+		return true;
+	}
+
+	@Override
+	public void restorePendingState(final Map<String, String> state) throws Exception
+	{
+		String key = state.get(Constants.OAUTH_TOKEN);
+		if (key == null) {
+			throw new SocialAuthException("Request token is missing");
+		}
+		requestToken = new AccessGrant();
+		requestToken.setKey(key);
+		requestToken.setSecret(state.get(Constants.OAUTH_TOKEN_SECRET));
+		providerState = true;
+	}
+
 	@Override
 	public void setAccessTokenParameterName(final String accessTokenParameterName)
 	{
@@ -174,6 +219,18 @@ public class OAuth1 implements OAuthStrategyBase
 		providerState = false;
 	}
 
+	@Override
+	public void setTransport(final HttpTransport transport)
+	{
+		oauth.setTransport(transport);
+	}
+
+	@Override
+	public AccessGrant refreshAccessGrant() throws Exception
+	{
+		throw new SocialAuthException("Refreshing access token is not supported by OAuth1");
+	}
+
 	@Override
 	public Response uploadImage(final String url, final String methodType, final Map<String, String> params, final Map<String, String> headerParams, final String fileName, final InputStream inputStream, final String fileParamName) throws Exception
 	{
@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.security.SecureRandom;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -38,7 +39,7 @@ import org.brickred.socialauth.exception.ProviderStateException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.Constants;
-import org.brickred.socialauth.util.HttpUtil;
+import org.brickred.socialauth.util.HttpTransport;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.OAuthConsumer;
@@ -52,8 +53,11 @@ import org.slf4j.LoggerFactory;
 public class OAuth2 implements OAuthStrategyBase {
 
 	private static final long serialVersionUID = -8431902665718727947L;
-	private final Logger logger = LoggerFactory.getLogger(OAuth2.class);
-	private AccessGrant accessGrant;
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final Logger logger = LoggerFactory.getLogger(OAuth2.class);
+	private static final String STATE = "state";
+	private static final String REDIRECT_URI = "redirect_uri";
+	private volatile AccessGrant accessGrant;
 	private OAuthConsumer oauth;
 	private boolean providerState;
 	private Map<String, String> endpoints;
@@ -62,6 +66,7 @@ public class OAuth2 implements OAuthStrategyBase {
 	private String providerId;
 	private String successUrl;
 	private String accessTokenParameterName;
+	private String state;
 
 	public OAuth2(final OAuthConfig config, final Map<String, String> endpoints) {
 		oauth = new OAuthConsumer(config);
@@ -91,6 +96,8 @@ public class OAuth2 implements OAuthStrategyBase {
 		if (scope != null) {
 			sb.append("&scope=").append(scope);
 		}
+		state = newState();
+		sb.append("&state=").append(state);
 		String url = sb.toString();
 
 		logger.info("Redirection to following URL should happen : " + url);
@@ -110,13 +117,21 @@ public class OAuth2 implements OAuthStrategyBase {
 		if (!providerState) {
 			throw new ProviderStateException();
 		}
+		String returnedState = requestParams.get("state");
+		// the state is always sent, so a response without it is rejected
+		// like one with another state
+		if (returnedState == null) {
+			throw new SocialAuthException("State parameter is missing");
+		}
+		if (!returnedState.equals(state)) {
+			throw new SocialAuthException("State parameter does not match");
+		}
 		String code = requestParams.get("code");
 		if (code == null || code.length() == 0) {
 			throw new SocialAuthException("Verification code is null");
 		}
 		logger.debug("Verification Code : " + code);
 		String acode;
-		String accessToken = null;
 		try {
 			acode = URLEncoder.encode(code, "UTF-8");
 		} catch (Exception e) {
@@ -141,26 +156,38 @@ public class OAuth2 implements OAuthStrategyBase {
 			if (MethodType.POST.toString().equals(methodType)) {
 				String[] strings = authURL.split("\\?");
 				if (strings.length > 1) {
-					response = HttpUtil.doHttpRequest(strings[0], methodType, strings[1], null);
+					response = oauth.getTransport().execute(strings[0], methodType, strings[1], null);
 				} else {
-					response = HttpUtil.doHttpRequest(authURL, methodType, null, null);
+					response = oauth.getTransport().execute(authURL, methodType, null, null);
 				}
 			} else {
-				response = HttpUtil.doHttpRequest(authURL, methodType, null, null);
+				response = oauth.getTransport().execute(authURL, methodType, null, null);
 			}
 		} catch (Exception e) {
 			throw new SocialAuthException("Error in url : " + authURL, e);
 		}
+		accessGrant = getAccessGrant(response, authURL);
+		return accessGrant;
+	}
+
+	/**
+	 * Parses the access token response, which is either a JSON object or
+	 * form encoded. The expiry is recorded both as returned, in seconds, and
+	 * as an absolute time in milliseconds.
+	 */
+	private AccessGrant getAccessGrant(final Response response,
+			final String authURL) throws Exception {
 		String result;
 		try {
 			result = response.getResponseBodyAsString(Constants.ENCODING);
 		} catch (IOException io) {
 			throw new SocialAuthException(io);
 		}
+		String accessToken = null;
 		Map<String, Object> attributes = new HashMap<String, Object>();
 		Integer expires = null;
 		if (result.indexOf("{") < 0) {
-			String[] pairs = result.split("&");
+			String[] pairs = result.trim().split("&");
 			for (String pair : pairs) {
 				String[] kv = pair.split("=");
 				if (kv.length != 2) {
@@ -205,24 +232,82 @@ public class OAuth2 implements OAuthStrategyBase {
 		}
 		logger.debug("Access Token : " + accessToken);
 		logger.debug("Expires : " + expires);
-		if (accessToken != null) {
-			accessGrant = new AccessGrant();
-			accessGrant.setKey(accessToken);
-			accessGrant.setAttribute(Constants.EXPIRES, expires);
-			if (attributes.size() > 0) {
-				accessGrant.setAttributes(attributes);
-			}
-			if (permission != null) {
-				accessGrant.setPermission(permission);
-			} else {
-				accessGrant.setPermission(Permission.ALL);
-			}
-			accessGrant.setProviderId(providerId);
-		} else {
+		if (accessToken == null) {
 			throw new SocialAuthException(
 					"Access token and expires not found from " + authURL);
 		}
-		return accessGrant;
+		AccessGrant grant = new AccessGrant();
+		grant.setKey(accessToken);
+		if (attributes.size() > 0) {
+			grant.setAttributes(attributes);
+		}
+		grant.setAttribute(Constants.EXPIRES, expires);
+		if (expires != null) {
+			grant.setAttribute(Constants.EXPIRES_AT,
+					System.currentTimeMillis() + expires * 1000L);
+		}
+		if (permission != null) {
+			grant.setPermission(permission);
+		} else {
+			grant.setPermission(Permission.ALL);
+		}
+		grant.setProviderId(providerId);
+		return grant;
+	}
+
+	/**
+	 * Exchanges the refresh token of the current access grant for a new
+	 * access token. Providers which do not return a new refresh token keep
+	 * the old one.
+	 */
+	@Override
+	public AccessGrant refreshAccessGrant() throws Exception {
+		AccessGrant current = accessGrant;
+		if (current == null) {
+			throw new SocialAuthException(
+					"Please call verifyResponse function first to get Access Token");
+		}
+		Object refreshToken = current.getAttribute(Constants.REFRESH_TOKEN);
+		if (refreshToken == null) {
+			throw new SocialAuthException("Refresh token is not available for "
+					+ providerId);
+		}
+		String url = endpoints.get(Constants.OAUTH_ACCESS_TOKEN_URL);
+		StringBuffer sb = new StringBuffer();
+		sb.append("client_id=").append(oauth.getConfig().get_consumerKey());
+		sb.append("&client_secret=").append(
+				oauth.getConfig().get_consumerSecret());
+		sb.append("&refresh_token=").append(
+				URLEncoder.encode(refreshToken.toString(), Constants.ENCODING));
+		sb.append("&grant_type=refresh_token");
+		logger.debug("Refreshing access token for " + providerId);
+		Response response;
+		try {
+			response = oauth.getTransport().execute(url,
+					MethodType.POST.toString(), sb.toString(), null);
+		} catch (Exception e) {
+			throw new SocialAuthException("Error in url : " + url, e);
+		}
+		AccessGrant grant = getAccessGrant(response, url);
+		if (grant.getAttribute(Constants.REFRESH_TOKEN) == null) {
+			grant.setAttribute(Constants.REFRESH_TOKEN, refreshToken);
+		}
+		if (current.getPermission() != null) {
+			grant.setPermission(current.getPermission());
+		}
+		accessGrant = grant;
+		return grant;
+	}
+
+	private static String newState() {
+		byte bytes[] = new byte[16];
+		RANDOM.nextBytes(bytes);
+		StringBuilder sb = new StringBuilder(32);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+					Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
 	}
 
 	@Override
@@ -245,8 +330,8 @@ public class OAuth2 implements OAuthStrategyBase {
 		String urlStr = url + separator + accessTokenParameterName + "="
 				+ accessGrant.getKey();
 		logger.debug("Calling URL : " + urlStr);
-		return HttpUtil.doHttpRequest(urlStr, MethodType.GET.toString(), null,
-				null);
+		return oauth.execute(urlStr, MethodType.GET.toString(), null, null,
+				accessGrant);
 	}
 
 	@Override
@@ -254,6 +339,16 @@ public class OAuth2 implements OAuthStrategyBase {
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
+		return executeFeed(accessGrant, url, methodType, params, headerParams,
+				body);
+	}
+
+	@Override
+	public Response executeFeed(final AccessGrant accessGrant,
+			final String url, final String methodType,
+			final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
 		if (accessGrant == null) {
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
@@ -294,8 +389,8 @@ public class OAuth2 implements OAuthStrategyBase {
 		logger.debug("Calling URL	:	" + reqURL);
 		logger.debug("Body		:	" + bodyStr);
 		logger.debug("Header Params	:	" + headerParams);
-		return HttpUtil
-				.doHttpRequest(reqURL, methodType, bodyStr, headerParams);
+		return oauth.execute(reqURL, methodType, bodyStr, headerParams,
+				accessGrant);
 	}
 
 	@Override
@@ -303,6 +398,33 @@ public class OAuth2 implements OAuthStrategyBase {
 		this.accessGrant = accessGrant;
 	}
 
+	@Override
+	public AccessGrant getAccessGrant() {
+		return accessGrant;
+	}
+
+	@Override
+	public boolean savePendingState(final Map<String, String> pending) {
+		if (!providerState || state == null) {
+			return false;
+		}
+		pending.put(STATE, state);
+		pending.put(REDIRECT_URI, successUrl);
+		return true;
+	}
+
+	@Override
+	public void restorePendingState(final Map<String, String> pending)
+			throws Exception {
+		String s = pending.get(STATE);
+		if (s == null) {
+			throw new SocialAuthException("State parameter is missing");
+		}
+		state = s;
+		successUrl = pending.get(REDIRECT_URI);
+		providerState = true;
+	}
+
 	@Override
 	public void setAccessTokenParameterName(
 			final String accessTokenParameterName) {
@@ -315,6 +437,11 @@ public class OAuth2 implements OAuthStrategyBase {
 		providerState = false;
 	}
 
+	@Override
+	public void setTransport(final HttpTransport transport) {
+		oauth.setTransport(transport);
+	}
+
 	@Override
 	public Response uploadImage(final String url, final String methodType,
 			final Map<String, String> params,
@@ -326,7 +453,7 @@ public class OAuth2 implements OAuthStrategyBase {
 		if (params != null && params.size() > 0) {
 			map.putAll(params);
 		}
-		return HttpUtil.doHttpRequest(url, methodType, map, headerParams,
-				inputStream, fileName, null);
+		return oauth.execute(url, methodType, map, headerParams, inputStream,
+				fileName, null, accessGrant);
 	}
 }
@@ -30,7 +30,9 @@ import java.io.Serializable;
 import java.util.Map;
 
 import org.brickred.socialauth.Permission;
+import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.HttpTransport;
 import org.brickred.socialauth.util.Response;
 
 
@@ -101,6 +103,37 @@ public interface OAuthStrategyBase extends Serializable {
 			Map<String, String> params, Map<String, String> headerParams,
 			String body) throws Exception;
 
+	/**
+	 * Makes HTTP request to a given URL on behalf of the given access grant
+	 * instead of the grant of this strategy. It does not change the state of
+	 * the strategy, so one strategy can serve the requests of many users at
+	 * the same time.
+	 * 
+	 * @param accessGrant
+	 *            access grant of the user
+	 * @param url
+	 *            URL to make HTTP request.
+	 * @param methodType
+	 *            Method type can be GET, POST or PUT
+	 * @param params
+	 *            Parameters need to pass in request
+	 * @param headerParams
+	 *            Parameters need to pass as Header Parameters
+	 * @param body
+	 *            Request Body
+	 * @return Response object
+	 * @throws Exception
+	 *             if the strategy can not make requests for other grants
+	 */
+	public default Response executeFeed(final AccessGrant accessGrant,
+			final String url, final String methodType,
+			final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
+		throw new SocialAuthException(
+				"Requests for another access grant are not supported by this strategy");
+	}
+
 	/**
 	 * Sets the permission
 	 * 
@@ -127,6 +160,45 @@ public interface OAuthStrategyBase extends Serializable {
 	 */
 	public void setAccessGrant(AccessGrant accessGrant);
 
+	/**
+	 * Retrieves the access grant of the provider
+	 * 
+	 * @return the access grant, or null if the user is not verified yet or
+	 *         the strategy does not keep it
+	 */
+	public default AccessGrant getAccessGrant() {
+		return null;
+	}
+
+	/**
+	 * Writes the state of the authentication in progress, like the request
+	 * token or the OAuth 2 state, to the given map. Another instance created
+	 * from the same configuration can verify the response after
+	 * {@link #restorePendingState(Map)}. The configuration is never written.
+	 * 
+	 * @param state
+	 *            map to which the state is written
+	 * @return true if the state was written, false if the strategy can not
+	 *         resume an authentication in another instance
+	 */
+	public default boolean savePendingState(final Map<String, String> state) {
+		return false;
+	}
+
+	/**
+	 * Restores the state written by {@link #savePendingState(Map)}, so that
+	 * the response of the provider can be verified.
+	 * 
+	 * @param state
+	 *            the state of the authentication in progress
+	 * @throws Exception
+	 */
+	public default void restorePendingState(final Map<String, String> state)
+			throws Exception {
+		throw new SocialAuthException(
+				"Authentication state can not be restored by this strategy");
+	}
+
 	/**
 	 * Sets the name of access token parameter which will returns by the
 	 * provider. By default it is "access_token"
@@ -140,6 +212,34 @@ public interface OAuthStrategyBase extends Serializable {
 	 */
 	public void logout();
 
+	/**
+	 * Sets the transport used for making HTTP requests. If it is not set, the
+	 * default transport of HttpUtil is used.
+	 * 
+	 * @param transport
+	 *            the HTTP transport
+	 * @throws UnsupportedOperationException
+	 *             if the strategy always uses the default transport
+	 */
+	public default void setTransport(final HttpTransport transport) {
+		throw new UnsupportedOperationException(
+				"Setting the transport is not supported by this strategy");
+	}
+
+	/**
+	 * Obtains a new access token using the refresh token of the current
+	 * access grant, and uses it for further requests.
+	 * 
+	 * @return the refreshed AccessGrant
+	 * @throws Exception
+	 *             if the strategy does not support refreshing tokens or the
+	 *             grant has no refresh token
+	 */
+	public default AccessGrant refreshAccessGrant() throws Exception {
+		throw new SocialAuthException(
+				"Refreshing access token is not supported by this strategy");
+	}
+
 	/**
 	 * Makes HTTP request to upload image and status.
 	 * 
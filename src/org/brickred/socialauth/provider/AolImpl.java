@@ -67,7 +67,7 @@ public class AolImpl implements AuthProvider, Serializable {
 	private String token;
 	private String redirectUri;
 	private OAuthConfig config;
-	private final Logger logger = LoggerFactory.getLogger(AolImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(AolImpl.class);
 
 	/**
 	 * Reads properties provided in the configuration file
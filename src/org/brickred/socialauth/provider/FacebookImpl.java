@@ -35,6 +35,8 @@ import java.util.Map;
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactCursor;
+import org.brickred.socialauth.PagedContactProvider;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.ServerDataException;
@@ -61,7 +63,7 @@ import org.slf4j.LoggerFactory;
  * 
  */
 public class FacebookImpl extends AbstractProvider implements AuthProvider,
-		Serializable {
+		PagedContactProvider, Serializable {
 
 	private static final long serialVersionUID = 8644510564735754296L;
 	private static final String PROFILE_URL = "https://graph.facebook.com/me";
@@ -71,7 +73,7 @@ public class FacebookImpl extends AbstractProvider implements AuthProvider,
 	private static final String PUBLIC_PROFILE_URL = "http://www.facebook.com/profile.php?id=";
 	private static final String IMAGE_UPLOAD_URL = "https://graph.facebook.com/me/photos";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(FacebookImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(FacebookImpl.class);
 
 	private Permission scope;
 	private OAuthConfig config;
@@ -271,45 +273,99 @@ public class FacebookImpl extends AbstractProvider implements AuthProvider,
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		List<Contact> plist = new ArrayList<Contact>();
 		logger.info("Fetching contacts from " + CONTACTS_URL);
-		String respStr;
-		try {
-			Response response = authenticationStrategy
-					.executeFeed(CONTACTS_URL);
-			respStr = response.getResponseBodyAsString(Constants.ENCODING);
-		} catch (Exception e) {
-			throw new SocialAuthException("Error while getting contacts from "
-					+ CONTACTS_URL, e);
-		}
-		try {
-			logger.debug("User Contacts list in json : " + respStr);
-			JSONObject resp = new JSONObject(respStr);
-			JSONArray data = resp.getJSONArray("data");
-			logger.debug("Found contacts : " + data.length());
-			for (int i = 0; i < data.length(); i++) {
-				JSONObject obj = data.getJSONObject(i);
-				Contact p = new Contact();
-				String name = obj.getString("name");
-				if (name != null) {
-					String nameArr[] = name.split(" ");
-					if (nameArr.length > 1) {
-						p.setFirstName(nameArr[0]);
-						p.setLastName(nameArr[1]);
-					} else {
-						p.setFirstName(obj.getString("name"));
+		return getContactCursor().toList();
+	}
+
+	/**
+	 * Returns a cursor over the contacts of the user. Pages are fetched by
+	 * following the "paging.next" link of the previous page.
+	 * 
+	 * @return ContactCursor over the contacts
+	 */
+	@Override
+	public ContactCursor getContactCursor() throws Exception {
+		return new ContactCursor(new ContactCursor.PageReader() {
+			private String nextUrl = CONTACTS_URL;
+
+			@Override
+			public List<Contact> nextPage() throws Exception {
+				if (nextUrl == null) {
+					return null;
+				}
+				String url = nextUrl;
+				nextUrl = null;
+				String respStr;
+				try {
+					// paging links carry the access token, which the strategy
+					// adds again
+					Response response = authenticationStrategy
+							.executeFeed(removeAccessToken(url));
+					respStr = response
+							.getResponseBodyAsString(Constants.ENCODING);
+				} catch (Exception e) {
+					throw new SocialAuthException(
+							"Error while getting contacts from " + url, e);
+				}
+				List<Contact> plist = new ArrayList<Contact>();
+				try {
+					logger.debug("User Contacts list in json : " + respStr);
+					JSONObject resp = new JSONObject(respStr);
+					JSONArray data = resp.getJSONArray("data");
+					logger.debug("Found contacts : " + data.length());
+					if (data.length() == 0) {
+						return null;
+					}
+					for (int i = 0; i < data.length(); i++) {
+						plist.add(getContact(data.getJSONObject(i)));
+					}
+					JSONObject paging = resp.optJSONObject("paging");
+					if (paging != null && paging.has("next")) {
+						nextUrl = paging.getString("next");
 					}
-					p.setDisplayName(name);
+				} catch (Exception e) {
+					throw new ServerDataException(
+							"Failed to parse the user profile json : "
+									+ respStr, e);
 				}
-				p.setId(obj.getString("id"));
-				p.setProfileUrl(PUBLIC_PROFILE_URL + obj.getString("id"));
-				plist.add(p);
+				return plist;
 			}
-		} catch (Exception e) {
-			throw new ServerDataException(
-					"Failed to parse the user profile json : " + respStr, e);
+		});
+	}
+
+	private static String removeAccessToken(final String url) {
+		int idx = url.indexOf('?');
+		if (idx == -1) {
+			return url;
 		}
-		return plist;
+		StringBuilder sb = new StringBuilder(url.substring(0, idx));
+		char separator = '?';
+		for (String pair : url.substring(idx + 1).split("&")) {
+			if (pair.length() == 0 || pair.startsWith("access_token=")) {
+				continue;
+			}
+			sb.append(separator).append(pair);
+			separator = '&';
+		}
+		return sb.toString();
+	}
+
+	private Contact getContact(final JSONObject obj) throws Exception {
+		Contact p = new Contact();
+		String name = obj.getString("name");
+		if (name != null) {
+			String nameArr[] = name.split(" ");
+			if (nameArr.length > 1) {
+				p.setFirstName(nameArr[0]);
+				p.setLastName(nameArr[1]);
+			} else {
+				p.setFirstName(obj.getString("name"));
+			}
+			p.setDisplayName(name);
+		}
+		p.setId(obj.getString("id"));
+		p.setProfileUrl(PUBLIC_PROFILE_URL + obj.getString("id"));
+		return p;
 	}
 
 	/**
@@ -386,6 +442,11 @@ public class FacebookImpl extends AbstractProvider implements AuthProvider,
 		return accessGrant;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
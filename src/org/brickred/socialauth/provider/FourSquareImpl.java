@@ -35,6 +35,8 @@ import java.util.Map;
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactCursor;
+import org.brickred.socialauth.PagedContactProvider;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.SocialAuthException;
@@ -59,14 +61,15 @@ import org.slf4j.LoggerFactory;
  * 
  */
 public class FourSquareImpl extends AbstractProvider implements AuthProvider,
-		Serializable {
+		PagedContactProvider, Serializable {
 
 	private static final long serialVersionUID = 3364430495809289118L;
 	private static final String PROFILE_URL = "https://api.foursquare.com/v2/users/self";
 	private static final String CONTACTS_URL = "https://api.foursquare.com/v2/users/self/friends";
 	private static final String VIEW_PROFILE_URL = "http://foursquare.com/user/";
+	private static final int CONTACTS_PAGE_SIZE = 500;
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(FourSquareImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(FourSquareImpl.class);
 
 	private Permission scope;
 	private String accessToken;
@@ -231,63 +234,100 @@ public class FourSquareImpl extends AbstractProvider implements AuthProvider,
 	@Override
 	public List<Contact> getContactList() throws Exception {
 		logger.info("Fetching contacts from " + CONTACTS_URL);
+		return getContactCursor().toList();
+	}
 
-		Response serviceResponse;
-		try {
-			serviceResponse = authenticationStrategy.executeFeed(CONTACTS_URL);
-		} catch (Exception e) {
-			throw new SocialAuthException("Error while getting contacts from "
-					+ CONTACTS_URL, e);
-		}
-		if (serviceResponse.getStatus() != 200) {
-			throw new SocialAuthException("Error while getting contacts from "
-					+ CONTACTS_URL + "Status : " + serviceResponse.getStatus());
-		}
-		String respStr;
-		try {
-			respStr = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-		} catch (Exception exc) {
-			throw new SocialAuthException("Failed to read response from  "
-					+ CONTACTS_URL, exc);
-		}
-		logger.debug("User Contacts list in JSON " + respStr);
-		JSONObject resp = new JSONObject(respStr);
-		List<Contact> plist = new ArrayList<Contact>();
-		JSONArray items = new JSONArray();
-		if (resp.has("response")) {
-			JSONObject robj = resp.getJSONObject("response");
-			if (robj.has("friends")) {
-				JSONObject fobj = robj.getJSONObject("friends");
-				if (fobj.has("items")) {
-					items = fobj.getJSONArray("items");
+	/**
+	 * Returns a cursor over the contacts of the user. Pages of at most
+	 * {@value #CONTACTS_PAGE_SIZE} friends are requested with the "offset"
+	 * parameter until the reported count of friends has been read.
+	 * 
+	 * @return ContactCursor over the contacts
+	 */
+	@Override
+	public ContactCursor getContactCursor() throws Exception {
+		return new ContactCursor(new ContactCursor.PageReader() {
+			private int offset;
+			private boolean hasMore = true;
+
+			@Override
+			public List<Contact> nextPage() throws Exception {
+				if (!hasMore) {
+					return null;
+				}
+				hasMore = false;
+				String url = CONTACTS_URL + "?limit=" + CONTACTS_PAGE_SIZE
+						+ "&offset=" + offset;
+				Response serviceResponse;
+				try {
+					serviceResponse = authenticationStrategy.executeFeed(url);
+				} catch (Exception e) {
+					throw new SocialAuthException(
+							"Error while getting contacts from " + url, e);
+				}
+				if (serviceResponse.getStatus() != 200) {
+					throw new SocialAuthException(
+							"Error while getting contacts from " + url
+									+ "Status : " + serviceResponse.getStatus());
 				}
-			} else {
-				throw new SocialAuthException(
-						"Failed to parse the user profile json : " + respStr);
+				String respStr;
+				try {
+					respStr = serviceResponse
+							.getResponseBodyAsString(Constants.ENCODING);
+				} catch (Exception exc) {
+					throw new SocialAuthException(
+							"Failed to read response from  " + url, exc);
+				}
+				logger.debug("User Contacts list in JSON " + respStr);
+				JSONObject resp = new JSONObject(respStr);
+				JSONArray items = new JSONArray();
+				int total = 0;
+				if (resp.has("response")) {
+					JSONObject robj = resp.getJSONObject("response");
+					if (robj.has("friends")) {
+						JSONObject fobj = robj.getJSONObject("friends");
+						if (fobj.has("items")) {
+							items = fobj.getJSONArray("items");
+						}
+						total = fobj.optInt("count");
+					} else {
+						throw new SocialAuthException(
+								"Failed to parse the user profile json : "
+										+ respStr);
+					}
+				} else {
+					throw new SocialAuthException(
+							"Failed to parse the user profile json : "
+									+ respStr);
+				}
+				logger.debug("Contacts Found : " + items.length());
+				if (items.length() == 0) {
+					return null;
+				}
+				List<Contact> plist = new ArrayList<Contact>();
+				for (int i = 0; i < items.length(); i++) {
+					plist.add(getContact(items.getJSONObject(i)));
+				}
+				offset += items.length();
+				hasMore = offset < total;
+				return plist;
 			}
-		} else {
-			throw new SocialAuthException(
-					"Failed to parse the user profile json : " + respStr);
+		});
+	}
+
+	private Contact getContact(final JSONObject obj) throws Exception {
+		Contact c = new Contact();
+		if (obj.has("firstName")) {
+			c.setFirstName(obj.getString("firstName"));
 		}
-		logger.debug("Contacts Found : " + items.length());
-		for (int i = 0; i < items.length(); i++) {
-			JSONObject obj = items.getJSONObject(i);
-			Contact c = new Contact();
-			if (obj.has("firstName")) {
-				c.setFirstName(obj.getString("firstName"));
-			}
-			if (obj.has("lastName")) {
-				c.setLastName(obj.getString("lastName"));
-			}
-			if (obj.has("id")) {
-				c.setProfileUrl(VIEW_PROFILE_URL + obj.getString("id"));
-				c.setId(obj.getString("id"));
-			}
-			plist.add(c);
+		if (obj.has("lastName")) {
+			c.setLastName(obj.getString("lastName"));
 		}
-
-		return plist;
+		if (obj.has("id")) {
+			c.setProfileUrl(VIEW_PROFILE_URL + obj.getString("id"));
+			c.setId(obj.getString("id"));
+		}
+		return c;
 	}
 
 	/**
@@ -378,6 +418,11 @@ public class FourSquareImpl extends AbstractProvider implements AuthProvider,
 		return accessGrant;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
@@ -32,6 +32,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
@@ -51,8 +55,6 @@ import org.brickred.socialauth.util.Response;
 import org.brickred.socialauth.util.XMLParseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 
 
 /**
@@ -68,7 +70,7 @@ public class GoogleImpl extends AbstractProvider implements AuthProvider,
 	private static final String CONTACTS_FEED_URL = "http://www.google.com/m8/feeds/contacts/default/full/?max-results=1000";
 	private static final String CONTACT_NAMESPACE = "http://schemas.google.com/g/2005";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(GoogleImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(GoogleImpl.class);
 
 	private Permission scope;
 	private AccessGrant accessToken;
@@ -197,79 +199,119 @@ public class GoogleImpl extends AbstractProvider implements AuthProvider,
 					"Failed to retrieve the contacts from " + CONTACTS_FEED_URL,
 					ie);
 		}
-		List<Contact> plist = new ArrayList<Contact>();
-		Element root;
-
+		List<Contact> plist;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			plist = parseContacts(serviceResponse.getInputStream());
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the contacts from response."
 							+ CONTACTS_FEED_URL, e);
+		} finally {
+			serviceResponse.close();
 		}
-		NodeList contactsList = root.getElementsByTagName("entry");
-		if (contactsList != null && contactsList.getLength() > 0) {
-			logger.debug("Found contacts : " + contactsList.getLength());
-			for (int i = 0; i < contactsList.getLength(); i++) {
-				Element contact = (Element) contactsList.item(i);
-				String fname = "";
-				NodeList l = contact.getElementsByTagNameNS(CONTACT_NAMESPACE,
-						"email");
-				String address = null;
-				String emailArr[] = null;
-				if (l != null && l.getLength() > 0) {
-					Element el = (Element) l.item(0);
-					if (el != null) {
-						address = el.getAttribute("address");
-					}
-					if (l.getLength() > 1) {
-						emailArr = new String[l.getLength() - 1];
-						for (int k = 1; k < l.getLength(); k++) {
-							Element e = (Element) l.item(k);
-							if (e != null) {
-								emailArr[k - 1] = e.getAttribute("address");
-							}
+		if (plist.isEmpty()) {
+			logger.debug("No contacts were obtained from the feed : "
+					+ CONTACTS_FEED_URL);
+		} else {
+			logger.debug("Found contacts : " + plist.size());
+		}
+		return plist;
+	}
+
+	/**
+	 * Reads the contacts feed in a single forward pass. Only entries having
+	 * an email address are returned.
+	 * 
+	 * @param in
+	 *            Input stream of contacts feed
+	 * @return List of contacts
+	 * @throws XMLStreamException
+	 */
+	private List<Contact> parseContacts(final InputStream in)
+			throws XMLStreamException {
+		List<Contact> plist = new ArrayList<Contact>();
+		XMLStreamReader reader = XMLParseUtil.createXMLStreamReader(in);
+		try {
+			boolean inEntry = false;
+			List<String> emails = new ArrayList<String>();
+			String dispName = null;
+			String id = null;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (!inEntry) {
+						if (XMLParseUtil.isElement(reader, "entry")) {
+							inEntry = true;
+							emails.clear();
+							dispName = null;
+							id = null;
 						}
+					} else if ("email".equals(reader.getLocalName())
+							&& CONTACT_NAMESPACE.equals(reader
+									.getNamespaceURI())) {
+						String address = reader
+								.getAttributeValue(null, "address");
+						emails.add(address == null ? "" : address);
+					} else if (dispName == null
+							&& XMLParseUtil.isElement(reader, "title")) {
+						dispName = XMLParseUtil.getElementData(reader);
+					} else if (id == null
+							&& XMLParseUtil.isElement(reader, "id")) {
+						id = XMLParseUtil.getElementData(reader);
 					}
-				}
-				String lname = "";
-				String dispName = XMLParseUtil.getElementData(contact, "title");
-				if (dispName != null) {
-					String sarr[] = dispName.split(" ");
-					if (sarr.length > 0) {
-						if (sarr.length >= 1) {
-							fname = sarr[0];
-						}
-						if (sarr.length >= 2) {
-							StringBuilder sb = new StringBuilder();
-							for (int k = 1; k < sarr.length; k++) {
-								sb.append(sarr[k]).append(" ");
-							}
-							lname = sb.toString();
-						}
+				} else if (event == XMLStreamConstants.END_ELEMENT && inEntry
+						&& XMLParseUtil.isElement(reader, "entry")) {
+					inEntry = false;
+					Contact p = getContact(emails, dispName, id);
+					if (p != null) {
+						plist.add(p);
 					}
 				}
-				String id = XMLParseUtil.getElementData(contact, "id");
-
-				if (address != null && address.length() > 0) {
-					Contact p = new Contact();
-					p.setFirstName(fname);
-					p.setLastName(lname);
-					p.setEmail(address);
-					p.setDisplayName(dispName);
-					p.setOtherEmails(emailArr);
-					p.setId(id);
-					plist.add(p);
-				}
 			}
-		} else {
-			logger.debug("No contacts were obtained from the feed : "
-					+ CONTACTS_FEED_URL);
+		} finally {
+			reader.close();
 		}
 		return plist;
 	}
 
+	private Contact getContact(final List<String> emails,
+			final String dispName, final String id) {
+		String address = emails.isEmpty() ? null : emails.get(0);
+		if (address == null || address.length() == 0) {
+			return null;
+		}
+		String emailArr[] = null;
+		if (emails.size() > 1) {
+			emailArr = emails.subList(1, emails.size()).toArray(
+					new String[emails.size() - 1]);
+		}
+		String fname = "";
+		String lname = "";
+		if (dispName != null) {
+			String sarr[] = dispName.split(" ");
+			if (sarr.length > 0) {
+				if (sarr.length >= 1) {
+					fname = sarr[0];
+				}
+				if (sarr.length >= 2) {
+					StringBuilder sb = new StringBuilder();
+					for (int k = 1; k < sarr.length; k++) {
+						sb.append(sarr[k]).append(" ");
+					}
+					lname = sb.toString();
+				}
+			}
+		}
+		Contact p = new Contact();
+		p.setFirstName(fname);
+		p.setLastName(lname);
+		p.setEmail(address);
+		p.setDisplayName(dispName);
+		p.setOtherEmails(emailArr);
+		p.setId(id);
+		return p;
+	}
+
 	/**
 	 * Logout
 	 */
@@ -315,7 +357,16 @@ public class GoogleImpl extends AbstractProvider implements AuthProvider,
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
+		return api(authenticationStrategy, accessToken, url, methodType,
+				params, headerParams, body);
+	}
 
+	@Override
+	protected Response api(final OAuthStrategyBase strategy,
+			final AccessGrant accessGrant, final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
 		Response serviceResponse = null;
 		if (!MethodType.GET.toString().equals(methodType)) {
 			throw new SocialAuthException(
@@ -323,7 +374,7 @@ public class GoogleImpl extends AbstractProvider implements AuthProvider,
 		}
 		logger.debug("Calling URL : " + url);
 		try {
-			serviceResponse = authenticationStrategy.executeFeed(url,
+			serviceResponse = strategy.executeFeed(accessGrant, url,
 					methodType, params, headerParams, body);
 		} catch (Exception ie) {
 			throw new SocialAuthException(
@@ -359,6 +410,11 @@ public class GoogleImpl extends AbstractProvider implements AuthProvider,
 		return accessToken;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
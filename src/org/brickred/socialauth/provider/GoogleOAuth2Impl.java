@@ -32,10 +32,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.brickred.socialauth.AbstractProvider;
-import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
+import org.brickred.socialauth.RefreshableProvider;
 import org.brickred.socialauth.exception.ServerDataException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.exception.UserDeniedPermissionException;
@@ -58,7 +58,7 @@ import org.slf4j.LoggerFactory;
  * @author Manimaran Selvan
  * 
  */
-public class GoogleOAuth2Impl extends AbstractProvider implements AuthProvider, Serializable
+public class GoogleOAuth2Impl extends AbstractProvider implements RefreshableProvider, Serializable
 {
 
 	private static final long serialVersionUID = 8644510564735754296L;
@@ -69,7 +69,7 @@ public class GoogleOAuth2Impl extends AbstractProvider implements AuthProvider,
 	private Permission scope;
 	private OAuthConfig config;
 	private Profile userProfile;
-	private AccessGrant accessGrant;
+	private volatile AccessGrant accessGrant;
 	private OAuthStrategyBase authenticationStrategy;
 
 	// set this to the list of extended permissions you want
@@ -318,6 +318,20 @@ public class GoogleOAuth2Impl extends AbstractProvider implements AuthProvider,
 		return accessGrant;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy()
+	{
+		return authenticationStrategy;
+	}
+
+	@Override
+	public AccessGrant refreshAccessGrant() throws Exception
+	{
+		AccessGrant grant = authenticationStrategy.refreshAccessGrant();
+		accessGrant = grant;
+		return grant;
+	}
+
 	@Override
 	public String getProviderId()
 	{
@@ -33,10 +33,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.brickred.socialauth.AbstractProvider;
-import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
+import org.brickred.socialauth.RefreshableProvider;
 import org.brickred.socialauth.exception.ServerDataException;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.exception.UserDeniedPermissionException;
@@ -64,8 +64,8 @@ import org.slf4j.LoggerFactory;
  * 
  */
 
-public class HotmailImpl extends AbstractProvider implements AuthProvider,
-		Serializable {
+public class HotmailImpl extends AbstractProvider implements
+		RefreshableProvider, Serializable {
 
 	private static final long serialVersionUID = 4559561466129062485L;
 	private static final String PROFILE_URL = "https://apis.live.net/v5.0/me";
@@ -73,13 +73,13 @@ public class HotmailImpl extends AbstractProvider implements AuthProvider,
 	private static final String UPDATE_STATUS_URL = "https://apis.live.net/v5.0/me/share";
 	private static final String PROFILE_PICTURE_URL = "https://apis.live.net/v5.0/me/picture?access_token=%1$s";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(HotmailImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(HotmailImpl.class);
 
 	private Permission scope;
 	private boolean isVerify;
 	private OAuthConfig config;
 	private Profile userProfile;
-	private AccessGrant accessGrant;
+	private volatile AccessGrant accessGrant;
 	private OAuthStrategyBase authenticationStrategy;
 
 	// set this to the list of extended permissions you want
@@ -414,10 +414,20 @@ public class HotmailImpl extends AbstractProvider implements AuthProvider,
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
+		return api(authenticationStrategy, accessGrant, url, methodType,
+				params, headerParams, body);
+	}
+
+	@Override
+	protected Response api(final OAuthStrategyBase strategy,
+			final AccessGrant accessGrant, final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
 		logger.debug("Calling URL : " + url);
 		Response serviceResponse;
 		try {
-			serviceResponse = authenticationStrategy.executeFeed(url,
+			serviceResponse = strategy.executeFeed(accessGrant, url,
 					methodType, params, headerParams, body);
 		} catch (Exception e) {
 			throw new SocialAuthException(
@@ -450,6 +460,18 @@ public class HotmailImpl extends AbstractProvider implements AuthProvider,
 		return accessGrant;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
+	@Override
+	public AccessGrant refreshAccessGrant() throws Exception {
+		AccessGrant grant = authenticationStrategy.refreshAccessGrant();
+		accessGrant = grant;
+		return grant;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
@@ -32,6 +32,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
@@ -72,7 +76,7 @@ public class LinkedInImpl extends AbstractProvider implements AuthProvider,
 	private static final String PROFILE_URL = "http://api.linkedin.com/v1/people/~:(id,email-address,first-name,last-name,languages,date-of-birth,picture-url,location:(name))";
 	private static final String STATUS_BODY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><share><comment>%1$s</comment><visibility><code>anyone</code></visibility></share>";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(LinkedInImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(LinkedInImpl.class);
 
 	private Permission scope;
 	private AccessGrant accessToken;
@@ -175,46 +179,75 @@ public class LinkedInImpl extends AbstractProvider implements AuthProvider,
 					"Failed to retrieve the contacts from " + CONNECTION_URL,
 					ie);
 		}
-		Element root;
+		List<Contact> contactList;
 		try {
-			root = XMLParseUtil.loadXmlResource(serviceResponse
-					.getInputStream());
+			contactList = parseConnections(serviceResponse.getInputStream());
 		} catch (Exception e) {
 			throw new ServerDataException(
 					"Failed to parse the profile from response."
 							+ CONNECTION_URL, e);
+		} finally {
+			serviceResponse.close();
+		}
+		if (contactList.isEmpty()) {
+			logger.debug("No connections were obtained from : "
+					+ CONNECTION_URL);
+		} else {
+			logger.debug("Found contacts : " + contactList.size());
 		}
+		return contactList;
+	}
+
+	/**
+	 * Reads the connections response in a single forward pass. Only persons
+	 * having an id are returned.
+	 * 
+	 * @param in
+	 *            Input stream of connections response
+	 * @return List of contacts
+	 * @throws XMLStreamException
+	 */
+	private List<Contact> parseConnections(final InputStream in)
+			throws XMLStreamException {
 		List<Contact> contactList = new ArrayList<Contact>();
-		if (root != null) {
-			NodeList pList = root.getElementsByTagName("person");
-			if (pList != null && pList.getLength() > 0) {
-				logger.debug("Found contacts : " + pList.getLength());
-				for (int i = 0; i < pList.getLength(); i++) {
-					Element p = (Element) pList.item(i);
-					String fname = XMLParseUtil.getElementData(p, "first-name");
-					String lname = XMLParseUtil.getElementData(p, "last-name");
-					String id = XMLParseUtil.getElementData(p, "id");
-					String profileUrl = XMLParseUtil.getElementData(p,
-							"public-profile-url");
-					if (id != null) {
-						Contact cont = new Contact();
-						if (fname != null) {
-							cont.setFirstName(fname);
-						}
-						if (lname != null) {
-							cont.setLastName(lname);
-						}
-						if (profileUrl != null) {
-							cont.setProfileUrl(profileUrl);
+		XMLStreamReader reader = XMLParseUtil.createXMLStreamReader(in);
+		try {
+			Contact cont = null;
+			String id = null;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					if (cont == null) {
+						if (XMLParseUtil.isElement(reader, "person")) {
+							cont = new Contact();
+							id = null;
 						}
+					} else if (cont.getFirstName() == null
+							&& XMLParseUtil.isElement(reader, "first-name")) {
+						cont.setFirstName(XMLParseUtil.getElementData(reader));
+					} else if (cont.getLastName() == null
+							&& XMLParseUtil.isElement(reader, "last-name")) {
+						cont.setLastName(XMLParseUtil.getElementData(reader));
+					} else if (id == null
+							&& XMLParseUtil.isElement(reader, "id")) {
+						id = XMLParseUtil.getElementData(reader);
+					} else if (cont.getProfileUrl() == null
+							&& XMLParseUtil.isElement(reader,
+									"public-profile-url")) {
+						cont.setProfileUrl(XMLParseUtil.getElementData(reader));
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT
+						&& cont != null
+						&& XMLParseUtil.isElement(reader, "person")) {
+					if (id != null) {
 						cont.setId(id);
 						contactList.add(cont);
 					}
+					cont = null;
 				}
-			} else {
-				logger.debug("No connections were obtained from : "
-						+ CONNECTION_URL);
 			}
+		} finally {
+			reader.close();
 		}
 		return contactList;
 	}
@@ -391,6 +424,11 @@ public class LinkedInImpl extends AbstractProvider implements AuthProvider,
 		return accessToken;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
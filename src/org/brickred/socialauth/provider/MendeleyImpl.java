@@ -65,7 +65,7 @@ public class MendeleyImpl extends AbstractProvider implements AuthProvider,
 	private static final String PROFILE_URL = "https://api.mendeley.com/oapi/profiles/info/me/";
 	private static final String CONTACTS_URL = "https://api.mendeley.com/oapi/profiles/contacts/";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(MendeleyImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(MendeleyImpl.class);
 
 	private Permission scope;
 	private boolean isVerify;
@@ -344,6 +344,11 @@ public class MendeleyImpl extends AbstractProvider implements AuthProvider,
 		return accessToken;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
@@ -35,6 +35,8 @@ import java.util.Map;
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactCursor;
+import org.brickred.socialauth.PagedContactProvider;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.ServerDataException;
@@ -58,14 +60,14 @@ import org.slf4j.LoggerFactory;
  * 
  */
 public class MySpaceImpl extends AbstractProvider implements AuthProvider,
-		Serializable {
+		PagedContactProvider, Serializable {
 
 	private static final long serialVersionUID = -4074039782095430942L;
 	private static final String PROFILE_URL = "http://api.myspace.com/1.0/people/@me/@self";
 	private static final String CONTACTS_URL = "http://api.myspace.com/1.0/people/@me/@all";
 	private static final String UPDATE_STATUS_URL = "http://api.myspace.com/1.0/statusmood/@me/@self";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(MySpaceImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(MySpaceImpl.class);
 
 	private Permission scope;
 	private AccessGrant accessToken;
@@ -169,65 +171,104 @@ public class MySpaceImpl extends AbstractProvider implements AuthProvider,
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
-		if (accessToken == null) {
-			throw new SocialAuthException(
-					"Please call verifyResponse function first to get Access Token");
-		}
 		logger.info("Fetching contacts from " + CONTACTS_URL);
+		return getContactCursor().toList();
+	}
 
-		Response serviceResponse = null;
-		try {
-			serviceResponse = authenticationStrategy.executeFeed(CONTACTS_URL);
-		} catch (Exception ie) {
+	/**
+	 * Returns a cursor over the contacts of the user. Pages are requested
+	 * with the "startIndex" parameter until "totalResults" contacts have been
+	 * read.
+	 * 
+	 * @return ContactCursor over the contacts
+	 */
+	@Override
+	public ContactCursor getContactCursor() throws Exception {
+		if (accessToken == null) {
 			throw new SocialAuthException(
-					"Failed to retrieve the contacts from " + CONTACTS_URL, ie);
-		}
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-			logger.debug("Contacts JSON :" + result);
-		} catch (Exception exc) {
-			throw new SocialAuthException("Failed to read contacts from  "
-					+ CONTACTS_URL, exc);
-		}
-		JSONArray fArr = new JSONArray();
-		JSONObject resObj = new JSONObject(result);
-		if (resObj.has("entry")) {
-			fArr = resObj.getJSONArray("entry");
-		} else {
-			throw new ServerDataException(
-					"Failed to parse the user Contacts json : " + result);
+					"Please call verifyResponse function first to get Access Token");
 		}
-		List<Contact> plist = new ArrayList<Contact>();
-		for (int i = 0; i < fArr.length(); i++) {
-			JSONObject fObj = fArr.getJSONObject(i);
-			if (fObj.has("person")) {
-				Contact contact = new Contact();
-				JSONObject pObj = fObj.getJSONObject("person");
-				if (pObj.has("displayName")) {
-					contact.setDisplayName(pObj.getString("displayName"));
+		return new ContactCursor(new ContactCursor.PageReader() {
+			private String nextUrl = CONTACTS_URL;
+			private int count;
+
+			@Override
+			public List<Contact> nextPage() throws Exception {
+				if (nextUrl == null) {
+					return null;
 				}
-				if (pObj.has("name")) {
-					JSONObject nobj = pObj.getJSONObject("name");
-					if (nobj.has("familyName")) {
-						contact.setLastName(nobj.getString("familyName"));
-					}
-					if (nobj.has("givenName")) {
-						contact.setFirstName(nobj.getString("givenName"));
-					}
+				String url = nextUrl;
+				nextUrl = null;
+				Response serviceResponse = null;
+				try {
+					serviceResponse = authenticationStrategy.executeFeed(url);
+				} catch (Exception ie) {
+					throw new SocialAuthException(
+							"Failed to retrieve the contacts from " + url, ie);
 				}
-
-				if (pObj.has("profileUrl")) {
-					contact.setProfileUrl(pObj.getString("profileUrl"));
+				String result;
+				try {
+					result = serviceResponse
+							.getResponseBodyAsString(Constants.ENCODING);
+					logger.debug("Contacts JSON :" + result);
+				} catch (Exception exc) {
+					throw new SocialAuthException(
+							"Failed to read contacts from  " + url, exc);
+				}
+				JSONArray fArr = new JSONArray();
+				JSONObject resObj = new JSONObject(result);
+				if (resObj.has("entry")) {
+					fArr = resObj.getJSONArray("entry");
+				} else {
+					throw new ServerDataException(
+							"Failed to parse the user Contacts json : "
+									+ result);
+				}
+				if (fArr.length() == 0) {
+					return null;
+				}
+				List<Contact> plist = new ArrayList<Contact>();
+				for (int i = 0; i < fArr.length(); i++) {
+					JSONObject fObj = fArr.getJSONObject(i);
+					if (fObj.has("person")) {
+						plist.add(getContact(fObj.getJSONObject("person")));
+					}
 				}
-				if (pObj.has("id")) {
-					contact.setId(pObj.getString("id"));
+				count += fArr.length();
+				if (resObj.has("totalResults")
+						&& count < resObj.getInt("totalResults")) {
+					int startIndex = resObj.optInt("startIndex", count
+							- fArr.length());
+					nextUrl = CONTACTS_URL + "?startIndex="
+							+ (startIndex + fArr.length());
 				}
-				plist.add(contact);
+				return plist;
 			}
+		});
+	}
+
+	private Contact getContact(final JSONObject pObj) throws Exception {
+		Contact contact = new Contact();
+		if (pObj.has("displayName")) {
+			contact.setDisplayName(pObj.getString("displayName"));
 		}
-		return plist;
+		if (pObj.has("name")) {
+			JSONObject nobj = pObj.getJSONObject("name");
+			if (nobj.has("familyName")) {
+				contact.setLastName(nobj.getString("familyName"));
+			}
+			if (nobj.has("givenName")) {
+				contact.setFirstName(nobj.getString("givenName"));
+			}
+		}
+
+		if (pObj.has("profileUrl")) {
+			contact.setProfileUrl(pObj.getString("profileUrl"));
+		}
+		if (pObj.has("id")) {
+			contact.setId(pObj.getString("id"));
+		}
+		return contact;
 	}
 
 	/**
@@ -394,6 +435,11 @@ public class MySpaceImpl extends AbstractProvider implements AuthProvider,
 		return accessToken;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
@@ -28,9 +28,12 @@ package org.brickred.socialauth.provider;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
@@ -43,6 +46,7 @@ import org.brickred.socialauth.util.AccessGrant;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
 import org.openid4java.OpenIDException;
+import org.openid4java.association.Association;
 import org.openid4java.consumer.ConsumerException;
 import org.openid4java.consumer.ConsumerManager;
 import org.openid4java.consumer.VerificationResult;
@@ -67,9 +71,15 @@ public class OpenIdImpl extends AbstractProvider implements AuthProvider,
 		Serializable {
 
 	private static final long serialVersionUID = 7694191649303094756L;
-	private final Logger logger = LoggerFactory.getLogger(OpenIdImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(OpenIdImpl.class);
+
+	// discovery results are cached for this long when no association could
+	// be made with the provider
+	private static final long DEFAULT_DISCOVERY_TTL = 5 * 60 * 1000L;
+	private static final int MAX_CACHED_DISCOVERIES = 1000;
+	private static final ConcurrentMap<String, CachedDiscovery> discoveryCache = new ConcurrentHashMap<String, CachedDiscovery>();
+	private static volatile ConsumerManager sharedManager;
 
-	private ConsumerManager manager;
 	private DiscoveryInformation discovered;
 	private String id;
 	private AccessGrant accessGrant;
@@ -77,13 +87,13 @@ public class OpenIdImpl extends AbstractProvider implements AuthProvider,
 	private Profile userProfile;
 
 	public OpenIdImpl(final Properties props) throws ConsumerException {
-		manager = new ConsumerManager();
+		getConsumerManager();
 		discovered = null;
 		this.id = props.getProperty("id");
 	}
 
 	public OpenIdImpl(final OAuthConfig config) throws ConsumerException {
-		manager = new ConsumerManager();
+		getConsumerManager();
 		this.id = config.getId();
 		discovered = null;
 	}
@@ -91,7 +101,6 @@ public class OpenIdImpl extends AbstractProvider implements AuthProvider,
 	@Override
 	public void setAccessGrant(final AccessGrant accessGrant)
 			throws ConsumerException {
-		manager = new ConsumerManager();
 		discovered = null;
 		this.accessGrant = accessGrant;
 	}
@@ -116,12 +125,28 @@ public class OpenIdImpl extends AbstractProvider implements AuthProvider,
 	private String authRequest(final String userSuppliedString,
 			final String returnToUrl) throws IOException {
 		try {
-			// perform discovery on the user-supplied identifier
-			List discoveries = manager.discover(userSuppliedString);
+			ConsumerManager manager = getConsumerManager();
+			String key = manager.getDiscovery()
+					.parseIdentifier(userSuppliedString).getIdentifier();
+			CachedDiscovery cached = discoveryCache.get(key);
+			List<?> discoveries;
+			if (cached != null
+					&& cached.expiresAt > System.currentTimeMillis()) {
+				discoveries = cached.discoveries;
+			} else {
+				// perform discovery on the user-supplied identifier
+				discoveries = manager.discover(userSuppliedString);
+				cached = null;
+			}
 
 			// attempt to associate with the OpenID provider
-			// and retrieve one service endpoint for authentication
+			// and retrieve one service endpoint for authentication.
+			// Associations are kept in the store of the shared manager, so
+			// this only contacts the provider when the association expired
 			discovered = manager.associate(discoveries);
+			if (cached == null && discovered != null) {
+				cacheDiscoveries(manager, key, discoveries);
+			}
 
 			// // store the discovery information in the user's session
 			// httpReq.getSession().setAttribute("openid-disc", discovered);
@@ -169,6 +194,61 @@ public class OpenIdImpl extends AbstractProvider implements AuthProvider,
 		return null;
 	}
 
+	/**
+	 * Returns the consumer manager shared by all OpenId providers, so that
+	 * associations made for one user are reused for other users.
+	 * 
+	 * @return the shared ConsumerManager
+	 * @throws ConsumerException
+	 */
+	private static ConsumerManager getConsumerManager()
+			throws ConsumerException {
+		ConsumerManager manager = sharedManager;
+		if (manager == null) {
+			synchronized (OpenIdImpl.class) {
+				manager = sharedManager;
+				if (manager == null) {
+					manager = new ConsumerManager();
+					sharedManager = manager;
+				}
+			}
+		}
+		return manager;
+	}
+
+	/**
+	 * Caches the discovery result until the association made with the
+	 * provider endpoint expires.
+	 */
+	private static void cacheDiscoveries(final ConsumerManager manager,
+			final String key, final List<?> discoveries) {
+		long now = System.currentTimeMillis();
+		long expiresAt = now + DEFAULT_DISCOVERY_TTL;
+		for (Object obj : discoveries) {
+			DiscoveryInformation info = (DiscoveryInformation) obj;
+			Association association = manager.getAssociations().load(
+					info.getOPEndpoint().toString());
+			if (association != null && !association.hasExpired()
+					&& !Association.FAILED_ASSOC_HANDLE.equals(association
+							.getHandle())) {
+				expiresAt = association.getExpiry().getTime();
+				break;
+			}
+		}
+		if (discoveryCache.size() >= MAX_CACHED_DISCOVERIES) {
+			Iterator<CachedDiscovery> it = discoveryCache.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().expiresAt <= now) {
+					it.remove();
+				}
+			}
+			if (discoveryCache.size() >= MAX_CACHED_DISCOVERIES) {
+				return;
+			}
+		}
+		discoveryCache.put(key, new CachedDiscovery(discoveries, expiresAt));
+	}
+
 	/**
 	 * Verifies the user when the external provider redirects back to our
 	 * application.
@@ -207,7 +287,7 @@ public class OpenIdImpl extends AbstractProvider implements AuthProvider,
 
 			// verify the response; ConsumerManager needs to be the same
 			// (static) instance used to place the authentication request
-			VerificationResult verification = manager.verify(
+			VerificationResult verification = getConsumerManager().verify(
 					receivingURL.toString(), response, discovered);
 
 			// examine the verification result and extract the verified
@@ -343,4 +423,14 @@ public class OpenIdImpl extends AbstractProvider implements AuthProvider,
 		throw new SocialAuthException(
 				"Update Status is not implemented for OpenId");
 	}
+
+	private static class CachedDiscovery {
+		final List<?> discoveries;
+		final long expiresAt;
+
+		CachedDiscovery(final List<?> discoveries, final long expiresAt) {
+			this.discoveries = discoveries;
+			this.expiresAt = expiresAt;
+		}
+	}
 }
@@ -68,7 +68,7 @@ public class RunkeeperImpl extends AbstractProvider implements AuthProvider,
 	private static final long serialVersionUID = 8644510564735754296L;
 	private static final String PROFILE_URL = "http://api.runkeeper.com/profile";
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(RunkeeperImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(RunkeeperImpl.class);
 
 	private Permission scope;
 	private OAuthConfig config;
@@ -327,6 +327,11 @@ public class RunkeeperImpl extends AbstractProvider implements AuthProvider,
 		return accessGrant;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
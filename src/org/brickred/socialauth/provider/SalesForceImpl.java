@@ -32,10 +32,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.brickred.socialauth.AbstractProvider;
-import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
+import org.brickred.socialauth.RefreshableProvider;
 import org.brickred.socialauth.exception.SocialAuthException;
 import org.brickred.socialauth.exception.UserDeniedPermissionException;
 import org.brickred.socialauth.oauthstrategy.OAuth2;
@@ -56,16 +56,16 @@ import org.slf4j.LoggerFactory;
  * 
  */
 
-public class SalesForceImpl extends AbstractProvider implements AuthProvider,
-		Serializable {
+public class SalesForceImpl extends AbstractProvider implements
+		RefreshableProvider, Serializable {
 
 	private static final long serialVersionUID = 6929330230703360670L;
 	private static final Map<String, String> ENDPOINTS;
-	private final Logger logger = LoggerFactory.getLogger(SalesForceImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(SalesForceImpl.class);
 
 	private OAuthConfig config;
 	private Permission scope;
-	private AccessGrant accessGrant;
+	private volatile AccessGrant accessGrant;
 	private Profile userProfile;
 	private String profileURL;
 	private OAuthStrategyBase authenticationStrategy;
@@ -353,6 +353,18 @@ public class SalesForceImpl extends AbstractProvider implements AuthProvider,
 		return accessGrant;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
+	@Override
+	public AccessGrant refreshAccessGrant() throws Exception {
+		AccessGrant grant = authenticationStrategy.refreshAccessGrant();
+		accessGrant = grant;
+		return grant;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
@@ -29,9 +29,11 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.regex.Pattern;
 
 import org.brickred.socialauth.AbstractProvider;
@@ -45,7 +47,9 @@ import org.brickred.socialauth.exception.UserDeniedPermissionException;
 import org.brickred.socialauth.oauthstrategy.OAuth1;
 import org.brickred.socialauth.oauthstrategy.OAuthStrategyBase;
 import org.brickred.socialauth.util.AccessGrant;
+import org.brickred.socialauth.util.AsyncUtil;
 import org.brickred.socialauth.util.Constants;
+import org.brickred.socialauth.util.LookupCache;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
 import org.brickred.socialauth.util.Response;
@@ -72,10 +76,13 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 	private static final String UPDATE_STATUS_URL = "http://api.twitter.com/1/statuses/update.json?status=";
 	private static final String IMAGE_UPLOAD_URL = "https://upload.twitter.com/1/statuses/update_with_media.json";
 	private static final String PROPERTY_DOMAIN = "twitter.com";
+	// users/lookup accepts at most 100 user ids per request
+	private static final int LOOKUP_BATCH_SIZE = 100;
+	private static final LookupCache<String[]> USER_LOOKUP_CACHE = new LookupCache<String[]>();
 	private static final Map<String, String> ENDPOINTS;
 	private static final Pattern IMAGE_FILE_PATTERN = Pattern.compile(
 			"(jpg|jpeg|gif|png)$", Pattern.CASE_INSENSITIVE);
-	private final Logger logger = LoggerFactory.getLogger(TwitterImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(TwitterImpl.class);
 
 	private Permission scope;
 	private boolean isVerify;
@@ -285,30 +292,26 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 			if (jobj.has("ids")) {
 				JSONArray idList = jobj.getJSONArray("ids");
 				int flength = idList.length();
-				int ids[] = new int[flength];
+				long ids[] = new long[flength];
 				for (int i = 0; i < idList.length(); i++) {
-					ids[i] = idList.getInt(i);
+					ids[i] = idList.getLong(i);
 				}
-				if (flength > 0) {
-					if (flength > 100) {
-						int i = flength / 100;
-						int temparr[];
-						for (int j = 1; j <= i; j++) {
-							temparr = new int[100];
-							for (int k = (j - 1) * 100, c = 0; k < j * 100; k++, c++) {
-								temparr[c] = ids[k];
-							}
-							plist.addAll(lookupUsers(temparr));
+				List<Callable<List<Contact>>> lookups = new ArrayList<Callable<List<Contact>>>();
+				for (int i = 0; i < flength; i += LOOKUP_BATCH_SIZE) {
+					final long temparr[] = Arrays.copyOfRange(ids, i,
+							Math.min(i + LOOKUP_BATCH_SIZE, flength));
+					lookups.add(new Callable<List<Contact>>() {
+						@Override
+						public List<Contact> call() throws Exception {
+							return lookupUsers(temparr);
 						}
-						if (flength > i * 100) {
-							temparr = new int[flength - i * 100];
-							for (int k = i * 100, c = 0; k < flength; k++, c++) {
-								temparr[c] = ids[k];
-							}
-							plist.addAll(lookupUsers(temparr));
-						}
-					} else {
-						plist.addAll(lookupUsers(ids));
+					});
+				}
+				if (!lookups.isEmpty()) {
+					for (List<Contact> batch : AsyncUtil.invokeAll(
+							getProviderId(), lookups,
+							AsyncUtil.getFanOutExecutor())) {
+						plist.addAll(batch);
 					}
 				}
 			}
@@ -319,57 +322,97 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 		return plist;
 	}
 
-	private List<Contact> lookupUsers(final int fids[]) throws Exception {
+	/**
+	 * Returns the cache of users fetched by users/lookup, which is shared by
+	 * all instances. It can be used to change the size and time to live of
+	 * the cache. Values are arrays of name and screen name.
+	 * 
+	 * @return the user lookup cache
+	 */
+	public static LookupCache<String[]> getUserLookupCache() {
+		return USER_LOOKUP_CACHE;
+	}
+
+	private List<Contact> lookupUsers(final long fids[]) throws Exception {
+		Map<Long, String[]> users = USER_LOOKUP_CACHE.getAll(fids);
+		List<Contact> uncached = new ArrayList<Contact>();
 		StringBuilder strb = new StringBuilder();
-		List<Contact> plist = new ArrayList<Contact>();
-		for (int value : fids) {
+		for (long value : fids) {
+			if (users.containsKey(value)) {
+				continue;
+			}
 			if (strb.length() != 0) {
 				strb.append(",");
 			}
 			strb.append(value);
 		}
-		String url = LOOKUP_URL + strb.toString();
-		logger.debug("Fetching info of following users : " + url);
-		Response serviceResponse = null;
-		try {
-			serviceResponse = authenticationStrategy.executeFeed(url);
-		} catch (Exception ie) {
-			throw new SocialAuthException(
-					"Failed to retrieve the contacts from " + url, ie);
-		}
-		String result;
-		try {
-			result = serviceResponse
-					.getResponseBodyAsString(Constants.ENCODING);
-		} catch (Exception e) {
-			throw new ServerDataException("Failed to get response from " + url,
-					e);
-		}
-		logger.debug("Users info : " + result);
-		try {
+		if (strb.length() > 0) {
+			String url = LOOKUP_URL + strb.toString();
+			logger.debug("Fetching info of following users : " + url);
+			Response serviceResponse = null;
+			try {
+				serviceResponse = authenticationStrategy.executeFeed(url);
+			} catch (Exception ie) {
+				throw new SocialAuthException(
+						"Failed to retrieve the contacts from " + url, ie);
+			}
+			String result;
+			try {
+				result = serviceResponse
+						.getResponseBodyAsString(Constants.ENCODING);
+			} catch (Exception e) {
+				throw new ServerDataException("Failed to get response from "
+						+ url, e);
+			}
+			logger.debug("Users info : " + result);
 			JSONArray jarr = new JSONArray(result);
 			for (int i = 0; i < jarr.length(); i++) {
 				JSONObject jobj = jarr.getJSONObject(i);
-				Contact cont = new Contact();
+				String user[] = new String[2];
 				if (jobj.has("name")) {
-					cont.setFirstName(jobj.getString("name"));
+					user[0] = jobj.getString("name");
 				}
 				if (jobj.has("screen_name")) {
-					cont.setDisplayName(jobj.getString("screen_name"));
-					cont.setProfileUrl("http://" + PROPERTY_DOMAIN + "/"
-							+ jobj.getString("screen_name"));
+					user[1] = jobj.getString("screen_name");
 				}
 				if (jobj.has("id_str")) {
-					cont.setId(jobj.getString("id_str"));
+					String idStr = jobj.getString("id_str");
+					long id = Long.parseLong(idStr);
+					users.put(id, user);
+					USER_LOOKUP_CACHE.put(id, user);
+				} else {
+					uncached.add(getContact(null, user));
 				}
-				plist.add(cont);
 			}
-		} catch (Exception e) {
-			throw e;
+		} else {
+			logger.debug("Found all " + fids.length + " users in cache");
+		}
+		List<Contact> plist = new ArrayList<Contact>(fids.length);
+		for (long id : fids) {
+			String user[] = users.get(id);
+			if (user != null) {
+				plist.add(getContact(String.valueOf(id), user));
+			}
 		}
+		plist.addAll(uncached);
 		return plist;
 	}
 
+	private Contact getContact(final String id, final String user[]) {
+		Contact cont = new Contact();
+		if (user[0] != null) {
+			cont.setFirstName(user[0]);
+		}
+		if (user[1] != null) {
+			cont.setDisplayName(user[1]);
+			cont.setProfileUrl("http://" + PROPERTY_DOMAIN + "/" + user[1]);
+		}
+		if (id != null) {
+			cont.setId(id);
+		}
+		return cont;
+	}
+
 	/**
 	 * Logout
 	 */
@@ -443,6 +486,11 @@ public class TwitterImpl extends AbstractProvider implements AuthProvider,
 		return accessToken;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
@@ -70,7 +70,7 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 	private static final String PROFILE_URL = "http://social.yahooapis.com/v1/user/%1$s/profile?format=json";
 	private static final String CONTACTS_URL = "http://social.yahooapis.com/v1/user/%1$s/contacts;count=max";
 	private static final String UPDATE_STATUS_URL = "http://social.yahooapis.com/v1/user/%1$s/profile/status";
-	private final Logger logger = LoggerFactory.getLogger(YahooImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(YahooImpl.class);
 	private static final Map<String, String> ENDPOINTS;
 
 	private Permission scope;
@@ -438,12 +438,21 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 			final Map<String, String> params,
 			final Map<String, String> headerParams, final String body)
 			throws Exception {
+		return api(authenticationStrategy, accessToken, url, methodType,
+				params, headerParams, body);
+	}
 
+	@Override
+	protected Response api(final OAuthStrategyBase strategy,
+			final AccessGrant accessGrant, final String url,
+			final String methodType, final Map<String, String> params,
+			final Map<String, String> headerParams, final String body)
+			throws Exception {
 		String urlStr = String.format(url,
-				accessToken.getAttribute("xoauth_yahoo_guid"));
+				accessGrant.getAttribute("xoauth_yahoo_guid"));
 		logger.debug("Calling URL : " + urlStr);
 
-		return authenticationStrategy.executeFeed(urlStr, methodType, params,
+		return strategy.executeFeed(accessGrant, urlStr, methodType, params,
 				headerParams, body);
 	}
 
@@ -465,6 +474,11 @@ public class YahooImpl extends AbstractProvider implements AuthProvider,
 		return accessToken;
 	}
 
+	@Override
+	protected OAuthStrategyBase getOauthStrategy() {
+		return authenticationStrategy;
+	}
+
 	@Override
 	public String getProviderId() {
 		return config.getId();
@@ -38,6 +38,8 @@ import java.util.Map;
 import org.brickred.socialauth.AbstractProvider;
 import org.brickred.socialauth.AuthProvider;
 import org.brickred.socialauth.Contact;
+import org.brickred.socialauth.ContactCursor;
+import org.brickred.socialauth.PagedContactProvider;
 import org.brickred.socialauth.Permission;
 import org.brickred.socialauth.Profile;
 import org.brickred.socialauth.exception.ProviderStateException;
@@ -51,6 +53,7 @@ import org.brickred.socialauth.util.Constants;
 import org.brickred.socialauth.util.HttpUtil;
 import org.brickred.socialauth.util.MethodType;
 import org.brickred.socialauth.util.OAuthConfig;
+import org.brickred.socialauth.util.RequestThrottle;
 import org.brickred.socialauth.util.Response;
 import org.brickred.socialauth.util.SocialAuthUtil;
 import org.json.JSONArray;
@@ -60,15 +63,17 @@ import org.slf4j.LoggerFactory;
 
 
 public class YammerImpl extends AbstractProvider implements AuthProvider,
-		Serializable {
+		PagedContactProvider, Serializable {
 	private static final long serialVersionUID = 8671863515161132392L;
 	private static final String AUTHORIZATION_URL = "https://www.yammer.com/dialog/oauth?client_id=%1$s&redirect_uri=%2$s";
 	private static final String ACCESS_TOKEN_URL = "https://www.yammer.com/oauth2/access_token.json?client_id=%1$s&client_secret=%2$s&code=%3$s";
 	private static final String UPDATE_STATUS_URL = "https://www.yammer.com/api/v1/messages.json";
 	private static final String PROFILE_URL = "https://www.yammer.com/api/v1/users/%1$s.json?access_token=%2$s";
 	private static final String CONTACTS_URL = "https://www.yammer.com/api/v1/users.json?sort_by=followers&access_token=%1$s";
+	// Yammer returns at most 50 users per page
+	private static final int CONTACTS_PAGE_SIZE = 50;
 
-	private final Logger logger = LoggerFactory.getLogger(YammerImpl.class);
+	private static final Logger logger = LoggerFactory.getLogger(YammerImpl.class);
 
 	private String accessToken;
 	private String successUrl;
@@ -181,8 +186,8 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		logger.debug("Parameters for access token : " + strb.toString());
 		Response response;
 		try {
-			response = HttpUtil.doHttpRequest(url, MethodType.GET.toString(),
-					null, null);
+			response = HttpUtil.getTransport().execute(url,
+					MethodType.GET.toString(), null, null);
 		} catch (Exception e) {
 			throw new SocialAuthException("Error in url : " + e);
 		}
@@ -239,47 +244,78 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 
 	@Override
 	public List<Contact> getContactList() throws Exception {
+		logger.info("Fetching contacts from "
+				+ String.format(CONTACTS_URL, accessToken));
+		return getContactCursor().toList();
+	}
+
+	/**
+	 * Returns a cursor over the contacts of the user. Pages are requested
+	 * with the "page" parameter until a page with less than
+	 * {@value #CONTACTS_PAGE_SIZE} users is returned.
+	 * 
+	 * @return ContactCursor over the contacts
+	 */
+	@Override
+	public ContactCursor getContactCursor() throws Exception {
 		if (!isVerify || accessToken == null) {
 			throw new SocialAuthException(
 					"Please call verifyResponse function first to get Access Token");
 		}
-		List<Contact> plist = new ArrayList<Contact>();
-		String contactURL = String.format(CONTACTS_URL, accessToken);
-		logger.info("Fetching contacts from " + contactURL);
-		String respStr;
-		try {
-			Response response = HttpUtil.doHttpRequest(contactURL,
-					MethodType.GET.toString(), null, null);
-			respStr = response.getResponseBodyAsString(Constants.ENCODING);
-		} catch (Exception e) {
-			throw new SocialAuthException("Error while getting contacts from "
-					+ contactURL, e);
-		}
-		try {
-			logger.debug("User Contacts list in json : " + respStr);
-			JSONArray resp = new JSONArray(respStr);
-			for (int i = 0; i < resp.length(); i++) {
-				JSONObject obj = resp.getJSONObject(i);
-				Contact p = new Contact();
-				String name = obj.getString("full_name");
-				p.setDisplayName(name);
-				JSONObject userContactDetails = obj.getJSONObject("contact");
-				JSONArray emailArr = userContactDetails
-						.getJSONArray("email_addresses");
-				JSONObject eobj = emailArr.getJSONObject(0);
-				if (eobj.has("address")) {
-					p.setEmail(eobj.getString("address"));
+		final String contactURL = String.format(CONTACTS_URL, accessToken);
+		return new ContactCursor(new ContactCursor.PageReader() {
+			private int page = 1;
+			private boolean hasMore = true;
+
+			@Override
+			public List<Contact> nextPage() throws Exception {
+				if (!hasMore) {
+					return null;
 				}
-				p.setId(obj.getString("id"));
-				p.setProfileUrl(obj.getString("web_url"));
-				plist.add(p);
+				hasMore = false;
+				String url = contactURL + "&page=" + page;
+				String respStr;
+				try {
+					Response response = execute(url,
+							MethodType.GET.toString(), null, null);
+					respStr = response
+							.getResponseBodyAsString(Constants.ENCODING);
+				} catch (Exception e) {
+					throw new SocialAuthException(
+							"Error while getting contacts from " + url, e);
+				}
+				List<Contact> plist = new ArrayList<Contact>();
+				try {
+					logger.debug("User Contacts list in json : " + respStr);
+					JSONArray resp = new JSONArray(respStr);
+					for (int i = 0; i < resp.length(); i++) {
+						plist.add(getContact(resp.getJSONObject(i)));
+					}
+					hasMore = resp.length() >= CONTACTS_PAGE_SIZE;
+				} catch (Exception e) {
+					throw new ServerDataException(
+							"Failed to parse the user profile json : "
+									+ respStr, e);
+				}
+				page++;
+				return plist.isEmpty() ? null : plist;
 			}
-		} catch (Exception e) {
-			throw new ServerDataException(
-					"Failed to parse the user profile json : " + respStr, e);
-		}
-		return plist;
+		});
+	}
 
+	private Contact getContact(final JSONObject obj) throws Exception {
+		Contact p = new Contact();
+		String name = obj.getString("full_name");
+		p.setDisplayName(name);
+		JSONObject userContactDetails = obj.getJSONObject("contact");
+		JSONArray emailArr = userContactDetails.getJSONArray("email_addresses");
+		JSONObject eobj = emailArr.getJSONObject(0);
+		if (eobj.has("address")) {
+			p.setEmail(eobj.getString("address"));
+		}
+		p.setId(obj.getString("id"));
+		p.setProfileUrl(obj.getString("web_url"));
+		return p;
 	}
 
 	/**
@@ -308,7 +344,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		String msgBody = "{\"body\" : \"" + msg + "\"}";
 		Response serviceResponse;
 		try {
-			serviceResponse = HttpUtil.doHttpRequest(UPDATE_STATUS_URL,
+			serviceResponse = execute(UPDATE_STATUS_URL,
 					MethodType.POST.toString(), msgBody, headerParam);
 
 			if (serviceResponse.getStatus() != 201) {
@@ -348,8 +384,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		String profileURL = String.format(PROFILE_URL, profileId, accessToken);
 		try {
 
-			serviceResponse = HttpUtil.doHttpRequest(profileURL, "GET", null,
-					null);
+			serviceResponse = execute(profileURL, "GET", null, null);
 		} catch (Exception e) {
 			throw new SocialAuthException(
 					"Failed to retrieve the user profile from  " + profileURL,
@@ -463,8 +498,7 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 		logger.debug("Calling URL : " + url);
 		logger.debug("Header Params : " + headerParam.toString());
 		try {
-			serviceResponse = HttpUtil.doHttpRequest(url, methodType, body,
-					headerParam);
+			serviceResponse = execute(url, methodType, body, headerParam);
 		} catch (Exception e) {
 			throw new SocialAuthException(
 					"Error while making request to URL : " + url, e);
@@ -511,6 +545,21 @@ public class YammerImpl extends AbstractProvider implements AuthProvider,
 				"Update Status is not implemented for Yammer");
 	}
 
+	private Response execute(final String url, final String methodType,
+			final String body, final Map<String, String> headerParams)
+			throws Exception {
+		RequestThrottle throttle = RequestThrottle.getThrottle(getProviderId());
+		if (throttle == null) {
+			return HttpUtil.getTransport().execute(url, methodType, body,
+					headerParams);
+		}
+		throttle.acquire(accessGrant);
+		Response response = HttpUtil.getTransport().execute(url, methodType,
+				body, headerParams);
+		throttle.update(accessGrant, response);
+		return response;
+	}
+
 	private String getScope() {
 		String scopeStr = null;
 		if (Permission.CUSTOM.equals(scope)) {
@@ -24,7 +24,10 @@
  */
 package org.brickred.socialauth.util;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -38,9 +41,10 @@ import org.brickred.socialauth.Permission;
  * @author tarunn@brickred.com
  * 
  */
-public class AccessGrant implements Serializable {
+public class AccessGrant implements Externalizable {
 
 	private static final long serialVersionUID = -7120362372191191930L;
+	private static final int VERSION = 1;
 	private String key;
 	private String secret;
 	private String providerId;
@@ -174,6 +178,35 @@ public class AccessGrant implements Serializable {
 		this.permission = permission;
 	}
 
+	/**
+	 * Writes the token, provider id, permission and attributes in a compact
+	 * binary form.
+	 */
+	@Override
+	public void writeExternal(final ObjectOutput out) throws IOException {
+		out.writeByte(VERSION);
+		SerializationUtil.writeString(out, key);
+		SerializationUtil.writeString(out, secret);
+		SerializationUtil.writeString(out, providerId);
+		SerializationUtil.writePermission(out, permission);
+		SerializationUtil.writeAttributes(out, _attributes);
+	}
+
+	@Override
+	public void readExternal(final ObjectInput in) throws IOException,
+			ClassNotFoundException {
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported AccessGrant version : "
+					+ version);
+		}
+		key = SerializationUtil.readString(in);
+		secret = SerializationUtil.readString(in);
+		providerId = SerializationUtil.readString(in);
+		permission = SerializationUtil.readPermission(in);
+		_attributes = SerializationUtil.readAttributes(in);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder result = new StringBuilder();
@@ -0,0 +1,341 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Utility methods for running blocking socialauth calls asynchronously.
+ * 
+ */
+public class AsyncUtil {
+
+	/**
+	 * Number of threads in the default executor
+	 */
+	public static final int DEFAULT_POOL_SIZE = 32;
+
+	/**
+	 * Number of calls which can wait for a thread of the default executor
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	/**
+	 * Number of calls of one provider which {@link #invokeAll} runs at the
+	 * same time, unless changed with {@link #setProviderConcurrency}
+	 */
+	public static final int DEFAULT_PROVIDER_CONCURRENCY = 4;
+
+	/**
+	 * Number of threads in the fan-out executor
+	 */
+	public static final int DEFAULT_FAN_OUT_POOL_SIZE = 16;
+
+	private static volatile Executor defaultExecutor;
+
+	private static volatile Executor fanOutExecutor;
+
+	private static final ConcurrentMap<String, Semaphore> providerPermits = new ConcurrentHashMap<String, Semaphore>();
+
+	/**
+	 * Returns the executor used by the asynchronous API when no executor is
+	 * given. It is a bounded pool of daemon threads; calls submitted when the
+	 * queue is full fail with RejectedExecutionException.
+	 * 
+	 * @return the default executor
+	 */
+	public static Executor getDefaultExecutor() {
+		Executor executor = defaultExecutor;
+		if (executor == null) {
+			synchronized (AsyncUtil.class) {
+				executor = defaultExecutor;
+				if (executor == null) {
+					ThreadPoolExecutor pool = new ThreadPoolExecutor(
+							DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE, 60L,
+							TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+									DEFAULT_QUEUE_SIZE), new DaemonThreadFactory(
+									"socialauth-async"));
+					pool.allowCoreThreadTimeOut(true);
+					executor = pool;
+					defaultExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Replaces the executor used by the asynchronous API when no executor is
+	 * given.
+	 * 
+	 * @param executor
+	 *            the executor
+	 */
+	public static void setDefaultExecutor(final Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor is null");
+		}
+		defaultExecutor = executor;
+	}
+
+	/**
+	 * Returns the executor used for the concurrent requests which a single
+	 * call makes with {@link #invokeAll}, for example the user lookups of
+	 * Twitter contacts. It is separate from the default executor, so that a
+	 * call running on the default executor never waits for requests queued
+	 * behind it. When all its threads are busy, requests run on the calling
+	 * thread.
+	 * 
+	 * @return the fan-out executor
+	 */
+	public static Executor getFanOutExecutor() {
+		Executor executor = fanOutExecutor;
+		if (executor == null) {
+			synchronized (AsyncUtil.class) {
+				executor = fanOutExecutor;
+				if (executor == null) {
+					ThreadPoolExecutor pool = new ThreadPoolExecutor(
+							DEFAULT_FAN_OUT_POOL_SIZE,
+							DEFAULT_FAN_OUT_POOL_SIZE, 60L, TimeUnit.SECONDS,
+							new SynchronousQueue<Runnable>(),
+							new DaemonThreadFactory("socialauth-fanout"),
+							new ThreadPoolExecutor.CallerRunsPolicy());
+					pool.allowCoreThreadTimeOut(true);
+					executor = pool;
+					fanOutExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Replaces the executor used for the concurrent requests of a single
+	 * call. It must not be the executor the calls themselves run on.
+	 * 
+	 * @param executor
+	 *            the executor
+	 */
+	public static void setFanOutExecutor(final Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor is null");
+		}
+		fanOutExecutor = executor;
+	}
+
+	/**
+	 * Runs the given call on the given executor. Exceptions thrown by the call,
+	 * including a rejection by the executor, complete the returned future
+	 * exceptionally. The {@link Deadline} of the calling thread, if any, also
+	 * applies to the call.
+	 * 
+	 * @param call
+	 *            the blocking call
+	 * @param executor
+	 *            the executor to run the call on
+	 * @return future which completes with the result of the call
+	 */
+	public static <T> CompletableFuture<T> supply(final Callable<T> call,
+			final Executor executor) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final Deadline deadline = Deadline.current();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (future.isDone()) {
+						return;
+					}
+					try {
+						future.complete(deadline == null ? call.call()
+								: deadline.call(call));
+					} catch (Throwable t) {
+						future.completeExceptionally(t);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Sets the number of calls of the given provider which
+	 * {@link #invokeAll} runs at the same time, across all callers.
+	 * 
+	 * @param providerId
+	 *            the provider id, for example "twitter"
+	 * @param permits
+	 *            maximum number of concurrent calls
+	 */
+	public static void setProviderConcurrency(final String providerId,
+			final int permits) {
+		if (permits < 1) {
+			throw new IllegalArgumentException(
+					"Concurrency must be at least 1");
+		}
+		providerPermits.put(providerId, new Semaphore(permits));
+	}
+
+	private static Semaphore getProviderPermits(final String providerId) {
+		Semaphore permits = providerPermits.get(providerId);
+		if (permits == null) {
+			permits = new Semaphore(DEFAULT_PROVIDER_CONCURRENCY);
+			Semaphore existing = providerPermits.putIfAbsent(providerId,
+					permits);
+			if (existing != null) {
+				permits = existing;
+			}
+		}
+		return permits;
+	}
+
+	/**
+	 * Runs the given calls of a provider concurrently on the given executor
+	 * and waits for all of them. No more calls of the provider than its
+	 * concurrency limit run at the same time; the calling thread blocks until
+	 * a permit is available, and a permit is held until its call has
+	 * finished. A single call is run on the calling thread.
+	 * 
+	 * The executor must not be one the calling thread may be running on, as
+	 * the calling thread would wait for calls queued behind it; use
+	 * {@link #getFanOutExecutor()}.
+	 * 
+	 * @param providerId
+	 *            the provider id, used to look up the concurrency limit
+	 * @param calls
+	 *            the blocking calls
+	 * @param executor
+	 *            the executor to run the calls on
+	 * @return results of the calls, in the order of the calls
+	 * @throws Exception
+	 *             the exception thrown by the first failed call; remaining
+	 *             calls are not started
+	 */
+	public static <T> List<T> invokeAll(final String providerId,
+			final List<? extends Callable<T>> calls, final Executor executor)
+			throws Exception {
+		List<T> results = new ArrayList<T>(calls.size());
+		if (calls.size() == 1) {
+			results.add(calls.get(0).call());
+			return results;
+		}
+		final Semaphore permits = getProviderPermits(providerId);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(
+				calls.size());
+		final Deadline deadline = Deadline.current();
+		for (final Callable<T> call : calls) {
+			permits.acquire();
+			if (failure.get() != null) {
+				permits.release();
+				break;
+			}
+			final CompletableFuture<T> future = new CompletableFuture<T>();
+			try {
+				// the permit is released when the call has finished, or was
+				// skipped, not when the future is cancelled
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							if (!future.isDone()) {
+								future.complete(deadline == null ? call
+										.call() : deadline.call(call));
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+							future.completeExceptionally(t);
+						} finally {
+							permits.release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				permits.release();
+				failure.compareAndSet(null, e);
+				future.completeExceptionally(e);
+			}
+			futures.add(future);
+		}
+		for (CompletableFuture<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				for (CompletableFuture<T> f : futures) {
+					f.cancel(false);
+				}
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw e;
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Thread factory which creates named daemon threads, so that pools created
+	 * by socialauth do not keep the JVM alive.
+	 */
+	public static class DaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		/**
+		 * 
+		 * @param prefix
+		 *            prefix of the thread names
+		 */
+		public DaemonThreadFactory(final String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fixed size byte arrays used for reading response bodies, so that
+ * large contact feeds do not allocate a fresh buffer for every chunk read.
+ * 
+ */
+public class BufferPool {
+
+	/**
+	 * Size of the pooled buffers
+	 */
+	public static final int CHUNK_SIZE = 8192;
+
+	private static final int MAX_POOLED = 256;
+	private static final Queue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger pooled = new AtomicInteger();
+
+	/**
+	 * Takes a buffer of CHUNK_SIZE bytes from the pool or allocates a new one
+	 * if the pool is empty.
+	 * 
+	 * @return a buffer of CHUNK_SIZE bytes
+	 */
+	public static byte[] acquire() {
+		byte[] buf = pool.poll();
+		if (buf == null) {
+			return new byte[CHUNK_SIZE];
+		}
+		pooled.decrementAndGet();
+		return buf;
+	}
+
+	/**
+	 * Returns a buffer to the pool. Buffers which were not taken from the pool
+	 * and buffers beyond the pool capacity are left to the garbage collector.
+	 * 
+	 * @param buf
+	 *            buffer to return
+	 */
+	public static void release(final byte[] buf) {
+		if (buf == null || buf.length != CHUNK_SIZE) {
+			return;
+		}
+		if (pooled.incrementAndGet() > MAX_POOLED) {
+			pooled.decrementAndGet();
+			return;
+		}
+		pool.offer(buf);
+	}
+}
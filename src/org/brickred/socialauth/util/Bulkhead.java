@@ -0,0 +1,139 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of calls to a remote service which are in progress at
+ * the same time, and the number of callers waiting for one of them to end.
+ * Callers beyond both limits, or waiting longer than the maximum wait, are
+ * refused, so that a stalled service cannot hold every thread of the
+ * application.
+ * 
+ */
+public class Bulkhead {
+
+	private final Semaphore permits;
+	private final int maxConcurrent;
+	private final int maxQueue;
+	private final long maxWait;
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * 
+	 * @param maxConcurrent
+	 *            maximum number of calls in progress
+	 * @param maxQueue
+	 *            maximum number of callers waiting for a call to end
+	 * @param maxWait
+	 *            maximum time in milliseconds a caller waits
+	 */
+	public Bulkhead(final int maxConcurrent, final int maxQueue,
+			final long maxWait) {
+		if (maxConcurrent < 1 || maxQueue < 0) {
+			throw new IllegalArgumentException("Invalid bulkhead limits");
+		}
+		this.permits = new Semaphore(maxConcurrent, true);
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueue = maxQueue;
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Waits for a call to be allowed. Every successful call must be followed
+	 * by {@link #release()}.
+	 * 
+	 * @return true if the call may be made, false if it is refused
+	 * @throws InterruptedException
+	 */
+	public boolean acquire() throws InterruptedException {
+		if (permits.tryAcquire()) {
+			return true;
+		}
+		if (queued.incrementAndGet() > maxQueue) {
+			queued.decrementAndGet();
+			rejected.incrementAndGet();
+			return false;
+		}
+		try {
+			if (permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+			rejected.incrementAndGet();
+			return false;
+		} finally {
+			queued.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Ends a call allowed by {@link #acquire()}.
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	/**
+	 * Returns the number of calls in progress.
+	 * 
+	 * @return number of calls in progress
+	 */
+	public int getActive() {
+		return maxConcurrent - permits.availablePermits();
+	}
+
+	/**
+	 * Returns the number of callers waiting.
+	 * 
+	 * @return number of waiting callers
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * Returns the number of refused calls.
+	 * 
+	 * @return number of refused calls
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Returns the maximum number of calls in progress.
+	 * 
+	 * @return maximum number of calls in progress
+	 */
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker of a remote service. It records the outcome of the last
+ * calls, and opens when the share of failed or slow calls reaches its
+ * threshold. While open, calls are refused without being made. After the
+ * open time a few probe calls are let through: if they all succeed the
+ * breaker closes, otherwise it opens again.
+ * 
+ * The breaker is safe for use by concurrent threads.
+ * 
+ */
+public class CircuitBreaker {
+
+	/**
+	 * State of the breaker
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Number of recent calls whose outcome is recorded
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+
+	/**
+	 * Number of calls which must be recorded before the breaker can open
+	 */
+	public static final int DEFAULT_MINIMUM_CALLS = 10;
+
+	/**
+	 * Percentage of failed calls at which the breaker opens
+	 */
+	public static final int DEFAULT_FAILURE_RATE = 50;
+
+	/**
+	 * Duration in milliseconds from which a call counts as slow
+	 */
+	public static final long DEFAULT_SLOW_CALL_DURATION = 10 * 1000L;
+
+	/**
+	 * Percentage of slow calls at which the breaker opens
+	 */
+	public static final int DEFAULT_SLOW_CALL_RATE = 80;
+
+	/**
+	 * Time in milliseconds the breaker stays open before probing
+	 */
+	public static final long DEFAULT_OPEN_DURATION = 30 * 1000L;
+
+	/**
+	 * Number of probe calls made while half open
+	 */
+	public static final int DEFAULT_PROBE_CALLS = 3;
+
+	private static final byte FAILED = 1;
+	private static final byte SLOW = 2;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(CircuitBreaker.class);
+
+	private final String name;
+	private final byte[] outcomes;
+	private final int minimumCalls;
+	private final int failureRate;
+	private final long slowCallDuration;
+	private final int slowCallRate;
+	private final long openDuration;
+	private final int probeCalls;
+
+	private State state = State.CLOSED;
+	private int position;
+	private int count;
+	private int failures;
+	private int slowCalls;
+	private long openedAt;
+	private int probesInFlight;
+	private int probeSuccesses;
+	private long totalCalls;
+	private long totalFailures;
+	private long totalSlowCalls;
+	private long totalRefused;
+	private int timesOpened;
+
+	/**
+	 * Creates a breaker with the default thresholds.
+	 * 
+	 * @param name
+	 *            name of the service, used in log messages
+	 */
+	public CircuitBreaker(final String name) {
+		this(name, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS,
+				DEFAULT_FAILURE_RATE, DEFAULT_SLOW_CALL_DURATION,
+				DEFAULT_SLOW_CALL_RATE, DEFAULT_OPEN_DURATION,
+				DEFAULT_PROBE_CALLS);
+	}
+
+	/**
+	 * 
+	 * @param name
+	 *            name of the service, used in log messages
+	 * @param windowSize
+	 *            number of recent calls whose outcome is recorded
+	 * @param minimumCalls
+	 *            number of calls which must be recorded before the breaker
+	 *            can open
+	 * @param failureRate
+	 *            percentage of failed calls at which the breaker opens
+	 * @param slowCallDuration
+	 *            duration in milliseconds from which a call counts as slow
+	 * @param slowCallRate
+	 *            percentage of slow calls at which the breaker opens
+	 * @param openDuration
+	 *            time in milliseconds the breaker stays open before probing
+	 * @param probeCalls
+	 *            number of probe calls made while half open
+	 */
+	public CircuitBreaker(final String name, final int windowSize,
+			final int minimumCalls, final int failureRate,
+			final long slowCallDuration, final int slowCallRate,
+			final long openDuration, final int probeCalls) {
+		this.name = name;
+		this.outcomes = new byte[windowSize];
+		this.minimumCalls = Math.min(minimumCalls, windowSize);
+		this.failureRate = failureRate;
+		this.slowCallDuration = slowCallDuration;
+		this.slowCallRate = slowCallRate;
+		this.openDuration = openDuration;
+		this.probeCalls = probeCalls;
+	}
+
+	/**
+	 * Asks permission to make a call. Every permitted call must be followed
+	 * by {@link #onSuccess(long)}, {@link #onFailure(long)} or
+	 * {@link #onCancel()}.
+	 * 
+	 * @return true if the call may be made
+	 */
+	public synchronized boolean tryAcquire() {
+		if (state == State.OPEN) {
+			if (System.currentTimeMillis() - openedAt < openDuration) {
+				totalRefused++;
+				return false;
+			}
+			logger.info("Circuit breaker of " + name + " is half open");
+			state = State.HALF_OPEN;
+			probesInFlight = 0;
+			probeSuccesses = 0;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probesInFlight + probeSuccesses >= probeCalls) {
+				totalRefused++;
+				return false;
+			}
+			probesInFlight++;
+		}
+		return true;
+	}
+
+	/**
+	 * Records a successful call.
+	 * 
+	 * @param duration
+	 *            duration of the call in milliseconds
+	 */
+	public void onSuccess(final long duration) {
+		record(false, duration);
+	}
+
+	/**
+	 * Records a failed call.
+	 * 
+	 * @param duration
+	 *            duration of the call in milliseconds
+	 */
+	public void onFailure(final long duration) {
+		record(true, duration);
+	}
+
+	/**
+	 * Gives back the permission of a call which was not made.
+	 */
+	public synchronized void onCancel() {
+		if (state == State.HALF_OPEN && probesInFlight > 0) {
+			probesInFlight--;
+		}
+	}
+
+	private synchronized void record(final boolean failed, final long duration) {
+		boolean slow = duration >= slowCallDuration;
+		totalCalls++;
+		if (failed) {
+			totalFailures++;
+		}
+		if (slow) {
+			totalSlowCalls++;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probesInFlight > 0) {
+				probesInFlight--;
+			}
+			if (failed || slow) {
+				open();
+			} else if (++probeSuccesses >= probeCalls) {
+				logger.info("Circuit breaker of " + name + " is closed");
+				state = State.CLOSED;
+				reset();
+			}
+			return;
+		}
+		if (state != State.CLOSED) {
+			return;
+		}
+		byte old = outcomes[position];
+		if (count == outcomes.length) {
+			if ((old & FAILED) != 0) {
+				failures--;
+			}
+			if ((old & SLOW) != 0) {
+				slowCalls--;
+			}
+		} else {
+			count++;
+		}
+		byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+		outcomes[position] = outcome;
+		position = (position + 1) % outcomes.length;
+		if (failed) {
+			failures++;
+		}
+		if (slow) {
+			slowCalls++;
+		}
+		if (count >= minimumCalls
+				&& (failures * 100 >= failureRate * count
+						|| slowCalls * 100 >= slowCallRate * count)) {
+			open();
+		}
+	}
+
+	private void open() {
+		logger.warn("Circuit breaker of " + name + " is open, " + failures
+				+ " failed and " + slowCalls + " slow of the last " + count
+				+ " calls");
+		state = State.OPEN;
+		openedAt = System.currentTimeMillis();
+		timesOpened++;
+		reset();
+	}
+
+	private void reset() {
+		position = 0;
+		count = 0;
+		failures = 0;
+		slowCalls = 0;
+		probesInFlight = 0;
+		probeSuccesses = 0;
+	}
+
+	/**
+	 * Returns the state of the breaker.
+	 * 
+	 * @return the state
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the number of recorded calls.
+	 * 
+	 * @return number of calls
+	 */
+	public synchronized long getCalls() {
+		return totalCalls;
+	}
+
+	/**
+	 * Returns the number of recorded failed calls.
+	 * 
+	 * @return number of failed calls
+	 */
+	public synchronized long getFailures() {
+		return totalFailures;
+	}
+
+	/**
+	 * Returns the number of recorded slow calls.
+	 * 
+	 * @return number of slow calls
+	 */
+	public synchronized long getSlowCalls() {
+		return totalSlowCalls;
+	}
+
+	/**
+	 * Returns the number of calls refused while the breaker was open.
+	 * 
+	 * @return number of refused calls
+	 */
+	public synchronized long getRefused() {
+		return totalRefused;
+	}
+
+	/**
+	 * Returns how many times the breaker has opened.
+	 * 
+	 * @return number of times opened
+	 */
+	public synchronized int getTimesOpened() {
+		return timesOpened;
+	}
+}
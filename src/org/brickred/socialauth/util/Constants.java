@@ -112,6 +112,16 @@ public interface Constants {
 	 */
 	public static final String EXPIRES = "expires";
 
+	/**
+	 * time in milliseconds at which the token expires
+	 */
+	public static final String EXPIRES_AT = "expires_at";
+
+	/**
+	 * refresh token string
+	 */
+	public static final String REFRESH_TOKEN = "refresh_token";
+
 	/**
 	 * openid
 	 */
@@ -198,6 +208,34 @@ public interface Constants {
 	 */
 	public static final String HTTP_CONNECTION_TIMEOUT = "http.connectionTimeOut";
 
+	/**
+	 * HTTP read timeout property. It can also be given per provider, prefixed
+	 * with the provider domain
+	 */
+	public static final String HTTP_READ_TIMEOUT = "http.readTimeOut";
+
+	/**
+	 * HTTP transport property. Value can be "default" or "http2"
+	 */
+	public static final String HTTP_TRANSPORT = "http.transport";
+
+	/**
+	 * HTTP/2 transport property value
+	 */
+	public static final String HTTP2_TRANSPORT = "http2";
+
+	/**
+	 * HTTP isolation property. If "true", requests to each host go through a
+	 * bulkhead and a circuit breaker
+	 */
+	public static final String HTTP_ISOLATION = "http.isolation";
+
+	/**
+	 * HTTP retry property. If "true", GET requests which fail with a transient
+	 * error are retried
+	 */
+	public static final String HTTP_RETRY = "http.retry";
+
 	/**
 	 * Content Encoding Header
 	 */
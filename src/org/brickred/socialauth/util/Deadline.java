@@ -0,0 +1,199 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.util.concurrent.Callable;
+
+import org.brickred.socialauth.exception.DeadlineExceededException;
+
+/**
+ * Point in time by which an operation must be done. An operation is run
+ * with {@link #call(Callable)}, for example
+ * 
+ * <pre>
+ * List&lt;Contact&gt; contacts = Deadline.after(5000).call(
+ * 		new Callable&lt;List&lt;Contact&gt;&gt;() {
+ * 			public List&lt;Contact&gt; call() throws Exception {
+ * 				return provider.getContactList();
+ * 			}
+ * 		});
+ * </pre>
+ * 
+ * Every HTTP request made by the operation, also on the executors of
+ * {@link AsyncUtil}, gets connect and read timeouts no longer than the time
+ * left, and requests started after the deadline fail with
+ * {@link DeadlineExceededException}. An operation making many requests is
+ * thus stopped once its time is used up.
+ * 
+ */
+public final class Deadline {
+
+	private static final ThreadLocal<Deadline> current = new ThreadLocal<Deadline>();
+	private static final ThreadLocal<Integer> readTimeout = new ThreadLocal<Integer>();
+
+	private final long expiresAt;
+
+	private Deadline(final long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+	/**
+	 * Returns a deadline the given time from now.
+	 * 
+	 * @param millis
+	 *            time in milliseconds
+	 * @return the deadline
+	 */
+	public static Deadline after(final long millis) {
+		return new Deadline(System.nanoTime() + millis * 1000000L);
+	}
+
+	/**
+	 * Returns the deadline of the operation running on the current thread.
+	 * 
+	 * @return the deadline, or null if there is none
+	 */
+	public static Deadline current() {
+		return current.get();
+	}
+
+	/**
+	 * Returns the time left in milliseconds.
+	 * 
+	 * @return time left, zero or less once the deadline has passed
+	 */
+	public long remaining() {
+		return (expiresAt - System.nanoTime()) / 1000000L;
+	}
+
+	/**
+	 * Returns true once the deadline has passed.
+	 * 
+	 * @return true if the deadline has passed
+	 */
+	public boolean isExpired() {
+		return remaining() <= 0;
+	}
+
+	/**
+	 * Runs the given operation with this deadline. If the operation already
+	 * runs with an earlier deadline, the earlier one applies.
+	 * 
+	 * @param operation
+	 *            the operation
+	 * @return result of the operation
+	 * @throws Exception
+	 *             thrown by the operation, or DeadlineExceededException if
+	 *             the deadline has passed before it started
+	 */
+	public <T> T call(final Callable<T> operation) throws Exception {
+		Deadline previous = current.get();
+		Deadline deadline = this;
+		if (previous != null && previous.expiresAt - expiresAt < 0) {
+			deadline = previous;
+		}
+		if (deadline.isExpired()) {
+			throw new DeadlineExceededException("Deadline exceeded");
+		}
+		current.set(deadline);
+		try {
+			return operation.call();
+		} finally {
+			if (previous == null) {
+				current.remove();
+			} else {
+				current.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * Returns the connect timeout for a request, bounded by the deadline of
+	 * the current thread.
+	 * 
+	 * @param timeout
+	 *            connect timeout of the transport, 0 if there is none
+	 * @return timeout to use, 0 if there is none
+	 * @throws DeadlineExceededException
+	 *             if the deadline has passed
+	 */
+	static int getConnectTimeout(final int timeout)
+			throws DeadlineExceededException {
+		return bound(timeout);
+	}
+
+	/**
+	 * Returns the read timeout for a request, which is the timeout of the
+	 * provider if it has one, otherwise the timeout of the transport, bounded
+	 * by the deadline of the current thread.
+	 * 
+	 * @param timeout
+	 *            read timeout of the transport, 0 if there is none
+	 * @return timeout to use, 0 if there is none
+	 * @throws DeadlineExceededException
+	 *             if the deadline has passed
+	 */
+	static int getReadTimeout(final int timeout)
+			throws DeadlineExceededException {
+		Integer override = readTimeout.get();
+		return bound(override != null ? override.intValue() : timeout);
+	}
+
+	/**
+	 * Runs the given request with the given read timeout instead of the one
+	 * of the transport.
+	 */
+	static <T> T withReadTimeout(final int timeout, final Callable<T> request)
+			throws Exception {
+		Integer previous = readTimeout.get();
+		readTimeout.set(Integer.valueOf(timeout));
+		try {
+			return request.call();
+		} finally {
+			if (previous == null) {
+				readTimeout.remove();
+			} else {
+				readTimeout.set(previous);
+			}
+		}
+	}
+
+	private static int bound(final int timeout)
+			throws DeadlineExceededException {
+		Deadline deadline = current.get();
+		if (deadline == null) {
+			return timeout;
+		}
+		long left = deadline.remaining();
+		if (left <= 0) {
+			throw new DeadlineExceededException("Deadline exceeded");
+		}
+		if (timeout <= 0 || timeout > left) {
+			return (int) Math.min(left, Integer.MAX_VALUE);
+		}
+		return timeout;
+	}
+}
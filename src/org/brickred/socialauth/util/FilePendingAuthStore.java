@@ -0,0 +1,201 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the state of pending authentication flows as files in a directory,
+ * so that several JVMs on one host, or on hosts sharing the directory, can
+ * complete each other's flows. Each flow is one file, written to a temporary
+ * file and renamed into place. A flow is claimed by atomically renaming its
+ * file, so only one JVM can remove it. Expired files are deleted while new
+ * flows are added. The files hold only the strings of the flow state, which
+ * are read back as strings, never as objects.
+ * 
+ */
+public class FilePendingAuthStore implements PendingAuthStore {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(FilePendingAuthStore.class);
+	private static final String SUFFIX = ".auth";
+	private static final long PURGE_INTERVAL = 60 * 1000L;
+	private static final char HEX[] = "0123456789abcdef".toCharArray();
+
+	private final File dir;
+	private final long ttl;
+	private volatile long lastPurge = System.currentTimeMillis();
+
+	/**
+	 * Creates a store with the default time to live of
+	 * {@link InMemoryPendingAuthStore#DEFAULT_TTL}.
+	 * 
+	 * @param dir
+	 *            directory for the flow files; it is created if missing
+	 * @throws IOException
+	 */
+	public FilePendingAuthStore(final File dir) throws IOException {
+		this(dir, InMemoryPendingAuthStore.DEFAULT_TTL);
+	}
+
+	/**
+	 * 
+	 * @param dir
+	 *            directory for the flow files; it is created if missing
+	 * @param ttl
+	 *            time to live of a pending flow in milliseconds
+	 * @throws IOException
+	 */
+	public FilePendingAuthStore(final File dir, final long ttl)
+			throws IOException {
+		Files.createDirectories(dir.toPath());
+		this.dir = dir;
+		this.ttl = ttl;
+	}
+
+	@Override
+	public void put(final String key, final Map<String, String> state)
+			throws Exception {
+		long now = System.currentTimeMillis();
+		purge(now);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(now + ttl);
+		out.writeInt(state.size());
+		for (Map.Entry<String, String> entry : state.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeUTF(entry.getValue());
+		}
+		out.close();
+		File tmp = new File(dir, UUID.randomUUID().toString() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			bytes.writeTo(fos);
+		} finally {
+			fos.close();
+		}
+		move(tmp, getFile(key));
+	}
+
+	@Override
+	public Map<String, String> remove(final String key) throws Exception {
+		File claimed = new File(dir, UUID.randomUUID().toString() + ".claim");
+		try {
+			move(getFile(key), claimed);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					Files.readAllBytes(claimed.toPath())));
+			if (in.readLong() <= System.currentTimeMillis()) {
+				return null;
+			}
+			int size = in.readInt();
+			Map<String, String> state = new HashMap<String, String>();
+			for (int i = 0; i < size; i++) {
+				String name = in.readUTF();
+				state.put(name, in.readUTF());
+			}
+			return state;
+		} finally {
+			Files.deleteIfExists(claimed.toPath());
+		}
+	}
+
+	private File getFile(final String key) throws Exception {
+		MessageDigest md = MessageDigest.getInstance("SHA-1");
+		byte digest[] = md.digest(key.getBytes(Constants.ENCODING));
+		StringBuilder sb = new StringBuilder(digest.length * 2 + SUFFIX.length());
+		for (byte b : digest) {
+			sb.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+		}
+		return new File(dir, sb.append(SUFFIX).toString());
+	}
+
+	private static void move(final File from, final File to)
+			throws IOException {
+		try {
+			Files.move(from.toPath(), to.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(from.toPath(), to.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void purge(final long now) {
+		if (now - lastPurge < PURGE_INTERVAL) {
+			return;
+		}
+		lastPurge = now;
+		File files[] = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File f : files) {
+			String name = f.getName();
+			try {
+				if (name.endsWith(SUFFIX)) {
+					DataInputStream in = new DataInputStream(
+							Files.newInputStream(f.toPath()));
+					long expiresAt;
+					try {
+						expiresAt = in.readLong();
+					} finally {
+						in.close();
+					}
+					if (expiresAt <= now) {
+						Files.deleteIfExists(f.toPath());
+					}
+				} else if (f.lastModified() + ttl <= now) {
+					// temporary or claimed files left by a crashed JVM
+					Files.deleteIfExists(f.toPath());
+				}
+			} catch (IOException e) {
+				logger.debug("Could not purge " + f, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.brickred.socialauth.exception.ServiceUnavailableException;
+import org.brickred.socialauth.exception.SocialAuthException;
+
+/**
+ * Transport which isolates the hosts of the providers from each other. Each
+ * host gets a {@link Bulkhead}, which bounds the requests in progress and
+ * waiting, and a {@link CircuitBreaker}, which refuses requests for a while
+ * once too many of them fail or are slow. Refused requests fail at once with
+ * {@link ServiceUnavailableException}, so that one stalled provider does not
+ * hold the threads needed by the others.
+ * 
+ * A request counts as failed when the wrapped transport throws an exception,
+ * the response cannot be received or the status is 500 or above. The bulkhead covers the request up to the
+ * response headers; reading the content is bounded by the read timeout of
+ * the wrapped transport.
+ * 
+ * It is installed with {@link HttpUtil#setTransport(HttpTransport)}, or with
+ * the "http.isolation" property of the configuration.
+ * 
+ */
+public class GuardedHttpTransport implements HttpTransport {
+
+	/**
+	 * Default maximum number of requests in progress per host
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT = 20;
+
+	/**
+	 * Default maximum number of requests waiting per host
+	 */
+	public static final int DEFAULT_MAX_QUEUE = 20;
+
+	/**
+	 * Default maximum time in milliseconds a request waits for its turn
+	 */
+	public static final long DEFAULT_MAX_WAIT = 1000L;
+
+	private final HttpTransport transport;
+	private final ConcurrentMap<String, Guard> guards = new ConcurrentHashMap<String, Guard>();
+	private final ConcurrentMap<String, int[]> limits = new ConcurrentHashMap<String, int[]>();
+
+	/**
+	 * 
+	 * @param transport
+	 *            the transport which makes the requests
+	 */
+	public GuardedHttpTransport(final HttpTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * Returns the transport which makes the requests.
+	 * 
+	 * @return the wrapped transport
+	 */
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the bulkhead limits of the given host, instead of the defaults.
+	 * 
+	 * @param host
+	 *            the host, for example "social.yahooapis.com"
+	 * @param maxConcurrent
+	 *            maximum number of requests in progress
+	 * @param maxQueue
+	 *            maximum number of requests waiting
+	 */
+	public void setLimits(final String host, final int maxConcurrent,
+			final int maxQueue) {
+		limits.put(host, new int[] { maxConcurrent, maxQueue });
+		Guard guard = guards.get(host);
+		if (guard != null) {
+			guard.bulkhead = new Bulkhead(maxConcurrent, maxQueue,
+					DEFAULT_MAX_WAIT);
+		}
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final String body, final Map<String, String> header)
+			throws Exception {
+		return call(urlStr, new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return transport.execute(urlStr, requestMethod, body, header);
+			}
+		});
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final Map<String, String> params, final Map<String, String> header,
+			final InputStream inputStream, final String fileName,
+			final String fileParamName) throws Exception {
+		return call(urlStr, new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return transport.execute(urlStr, requestMethod, params, header,
+						inputStream, fileName, fileParamName);
+			}
+		});
+	}
+
+	private Response call(final String urlStr, final Callable<Response> call)
+			throws Exception {
+		String host = new URL(urlStr).getHost();
+		Guard guard = getGuard(host);
+		CircuitBreaker breaker = guard.breaker;
+		if (!breaker.tryAcquire()) {
+			throw new ServiceUnavailableException("Circuit breaker of " + host
+					+ " is open");
+		}
+		Bulkhead bulkhead = guard.bulkhead;
+		boolean acquired = false;
+		try {
+			acquired = bulkhead.acquire();
+		} finally {
+			if (!acquired) {
+				breaker.onCancel();
+			}
+		}
+		if (!acquired) {
+			throw new ServiceUnavailableException("Too many requests to "
+					+ host + " in progress");
+		}
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			Response response = call.call();
+			try {
+				failed = response.readStatus() >= 500;
+			} catch (IOException e) {
+				throw new SocialAuthException(e);
+			}
+			return response;
+		} finally {
+			bulkhead.release();
+			long duration = (System.nanoTime() - start) / 1000000L;
+			if (failed) {
+				breaker.onFailure(duration);
+			} else {
+				breaker.onSuccess(duration);
+			}
+		}
+	}
+
+	private Guard getGuard(final String host) {
+		Guard guard = guards.get(host);
+		if (guard == null) {
+			int[] limit = limits.get(host);
+			Bulkhead bulkhead = limit == null ? new Bulkhead(
+					DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_QUEUE,
+					DEFAULT_MAX_WAIT) : new Bulkhead(limit[0], limit[1],
+					DEFAULT_MAX_WAIT);
+			guard = new Guard(new CircuitBreaker(host), bulkhead);
+			Guard existing = guards.putIfAbsent(host, guard);
+			if (existing != null) {
+				guard = existing;
+			}
+		}
+		return guard;
+	}
+
+	/**
+	 * Returns the circuit breaker of the given host.
+	 * 
+	 * @param host
+	 *            the host
+	 * @return the circuit breaker
+	 */
+	public CircuitBreaker getCircuitBreaker(final String host) {
+		return getGuard(host).breaker;
+	}
+
+	/**
+	 * Returns the current state of every host which has been called, keyed by
+	 * host.
+	 * 
+	 * @return metrics of the hosts
+	 */
+	public Map<String, HostMetrics> getMetrics() {
+		Map<String, HostMetrics> metrics = new TreeMap<String, HostMetrics>();
+		for (Map.Entry<String, Guard> entry : guards.entrySet()) {
+			metrics.put(entry.getKey(), new HostMetrics(entry.getKey(),
+					entry.getValue()));
+		}
+		return metrics;
+	}
+
+	@Override
+	public void setProxyConfig(final String host, final int port) {
+		transport.setProxyConfig(host, port);
+	}
+
+	@Override
+	public void setConnectionTimeout(final int timeout) {
+		transport.setConnectionTimeout(timeout);
+	}
+
+	@Override
+	public void setReadTimeout(final int timeout) {
+		transport.setReadTimeout(timeout);
+	}
+
+	private static class Guard {
+		final CircuitBreaker breaker;
+		volatile Bulkhead bulkhead;
+
+		Guard(final CircuitBreaker breaker, final Bulkhead bulkhead) {
+			this.breaker = breaker;
+			this.bulkhead = bulkhead;
+		}
+	}
+
+	/**
+	 * Snapshot of the state of one host.
+	 */
+	public static class HostMetrics {
+		private final String host;
+		private final CircuitBreaker.State state;
+		private final long calls;
+		private final long failures;
+		private final long slowCalls;
+		private final long refused;
+		private final long rejected;
+		private final int active;
+		private final int queued;
+
+		HostMetrics(final String host, final Guard guard) {
+			this.host = host;
+			CircuitBreaker breaker = guard.breaker;
+			Bulkhead bulkhead = guard.bulkhead;
+			state = breaker.getState();
+			calls = breaker.getCalls();
+			failures = breaker.getFailures();
+			slowCalls = breaker.getSlowCalls();
+			refused = breaker.getRefused();
+			rejected = bulkhead.getRejected();
+			active = bulkhead.getActive();
+			queued = bulkhead.getQueued();
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		/**
+		 * @return state of the circuit breaker
+		 */
+		public CircuitBreaker.State getState() {
+			return state;
+		}
+
+		/**
+		 * @return number of completed requests
+		 */
+		public long getCalls() {
+			return calls;
+		}
+
+		/**
+		 * @return number of failed requests
+		 */
+		public long getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return number of slow requests
+		 */
+		public long getSlowCalls() {
+			return slowCalls;
+		}
+
+		/**
+		 * @return number of requests refused by the circuit breaker
+		 */
+		public long getRefused() {
+			return refused;
+		}
+
+		/**
+		 * @return number of requests refused by the bulkhead
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		/**
+		 * @return number of requests in progress
+		 */
+		public int getActive() {
+			return active;
+		}
+
+		/**
+		 * @return number of requests waiting
+		 */
+		public int getQueued() {
+			return queued;
+		}
+
+		@Override
+		public String toString() {
+			return host + " [state=" + state + ", calls=" + calls
+					+ ", failures=" + failures + ", slowCalls=" + slowCalls
+					+ ", refused=" + refused + ", rejected=" + rejected
+					+ ", active=" + active + ", queued=" + queued + "]";
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes HMAC-SHA1 signatures with a cached Mac instance. Mac is not thread
+ * safe, so every thread keeps its own instance, which is set up with a new
+ * key only when the key differs from the one of the previous signature. The
+ * provider is looked up once per thread instead of once per signature.
+ * 
+ */
+public class HmacSha1Signer {
+
+	private static final String ALGORITHM = "HmacSHA1";
+
+	private static final ThreadLocal<Signer> SIGNERS = new ThreadLocal<Signer>();
+
+	/**
+	 * Computes the HMAC-SHA1 of the given data.
+	 * 
+	 * @param key
+	 *            the signing key
+	 * @param data
+	 *            the data to sign
+	 * @return the raw HMAC
+	 * @throws GeneralSecurityException
+	 */
+	public static byte[] sign(final String key, final byte[] data)
+			throws GeneralSecurityException {
+		Signer signer = SIGNERS.get();
+		if (signer == null) {
+			signer = new Signer(Mac.getInstance(ALGORITHM));
+			SIGNERS.set(signer);
+		}
+		if (!key.equals(signer.key)) {
+			// a failed init leaves no key, so the next call sets it up again
+			signer.key = null;
+			try {
+				signer.mac.init(new SecretKeySpec(key
+						.getBytes(Constants.ENCODING), ALGORITHM));
+			} catch (UnsupportedEncodingException e) {
+				throw new GeneralSecurityException(e);
+			}
+			signer.key = key;
+		}
+		// doFinal resets the Mac, so it can be reused for the next signature
+		return signer.mac.doFinal(data);
+	}
+
+	private static class Signer {
+		final Mac mac;
+		String key;
+
+		Signer(final Mac mac) {
+			this.mac = mac;
+		}
+	}
+}
@@ -0,0 +1,388 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link HttpTransport} built on java.net.http.HttpClient. It prefers HTTP/2,
+ * so that concurrent requests to the same provider host share one multiplexed
+ * connection, and falls back to HTTP/1.1 when the server does not negotiate
+ * h2. It is enabled by setting "http.transport" to "http2" in the
+ * configuration properties and needs Java 11 or later.
+ * <p>
+ * HttpClient has no read timeout. The read timeout bounds the wait for the
+ * response headers as the request timeout, and each read of the response
+ * body separately: a read which takes longer than the read timeout, or than
+ * the time left to the {@link Deadline} of the request, closes the body and
+ * fails with a SocketTimeoutException, as HttpURLConnection does.
+ * </p>
+ * 
+ */
+public class HttpClientTransport implements HttpTransport {
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(HttpClientTransport.class);
+	private static final String CONTENT_TYPE = "Content-Type";
+	private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+	private static volatile ScheduledThreadPoolExecutor timer;
+
+	private final HttpClient.Version version;
+	private volatile HttpClient client;
+	private volatile InetSocketAddress proxyAddress;
+	private volatile int timeoutValue;
+	private volatile int readTimeoutValue;
+
+	public HttpClientTransport() {
+		this(HttpClient.Version.HTTP_2);
+	}
+
+	/**
+	 * 
+	 * @param version
+	 *            preferred HTTP version
+	 */
+	public HttpClientTransport(final HttpClient.Version version) {
+		this.version = version;
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final String body, final Map<String, String> header)
+			throws Exception {
+		return send(buildRequest(urlStr, requestMethod, header,
+				getPublisher(requestMethod, body), body != null));
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final Map<String, String> params, final Map<String, String> header,
+			final InputStream inputStream, final String fileName,
+			final String fileParamName) throws Exception {
+		BodyPublisher publisher = BodyPublishers.noBody();
+		String boundary = null;
+		if (inputStream != null && hasBody(requestMethod)) {
+			logger.debug(requestMethod + " request");
+			boundary = "----Socialauth-posting" + System.currentTimeMillis();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			HttpUtil.writeMultipart(new DataOutputStream(bytes), boundary,
+					params, inputStream, fileName, fileParamName);
+			publisher = BodyPublishers.ofByteArray(bytes.toByteArray());
+		}
+		HttpRequest.Builder builder;
+		try {
+			builder = buildRequest(urlStr, requestMethod, header, publisher,
+					false);
+			if (boundary != null) {
+				builder.setHeader(CONTENT_TYPE,
+						"multipart/form-data; boundary=" + boundary);
+			}
+		} catch (Exception e) {
+			throw new SocialAuthException(e);
+		}
+		return send(builder);
+	}
+
+	private Response send(final HttpRequest.Builder builder) throws Exception {
+		int timeout = Deadline.getReadTimeout(readTimeoutValue);
+		Deadline deadline = Deadline.current();
+		try {
+			return toResponse(getClient().send(builder.build(),
+					BodyHandlers.ofInputStream()), timeout, deadline);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SocialAuthException(e);
+		} catch (Exception e) {
+			throw new SocialAuthException(e);
+		}
+	}
+
+	private HttpRequest.Builder buildRequest(final String urlStr,
+			final String requestMethod, final Map<String, String> header,
+			final BodyPublisher publisher, final boolean formBody)
+			throws Exception {
+		String method = requestMethod == null ? MethodType.GET.toString()
+				: requestMethod.toUpperCase();
+		HttpRequest.Builder builder = HttpRequest.newBuilder(new URI(urlStr))
+				.method(method, publisher);
+		// the request timeout bounds the wait for the response headers, the
+		// reads of the body are bounded by TimedInputStream
+		int timeout = Deadline.getReadTimeout(readTimeoutValue);
+		if (timeout > 0) {
+			builder.timeout(Duration.ofMillis(timeout));
+		}
+		boolean contentType = false;
+		if (header != null) {
+			for (Map.Entry<String, String> entry : header.entrySet()) {
+				try {
+					builder.setHeader(entry.getKey(), entry.getValue());
+					if (CONTENT_TYPE.equalsIgnoreCase(entry.getKey())) {
+						contentType = true;
+					}
+				} catch (IllegalArgumentException e) {
+					logger.debug("Skipping header restricted by HttpClient : "
+							+ entry.getKey());
+				}
+			}
+		}
+		// HttpURLConnection sends form bodies with this content type by
+		// default and the providers rely on it
+		if (formBody && !contentType && hasBody(method)) {
+			builder.setHeader(CONTENT_TYPE, FORM_CONTENT_TYPE);
+		}
+		return builder;
+	}
+
+	private BodyPublisher getPublisher(final String requestMethod,
+			final String body) {
+		if (body != null && hasBody(requestMethod)) {
+			return BodyPublishers.ofString(body);
+		}
+		return BodyPublishers.noBody();
+	}
+
+	private boolean hasBody(final String requestMethod) {
+		return requestMethod != null
+				&& !MethodType.GET.toString().equalsIgnoreCase(requestMethod)
+				&& !MethodType.DELETE.toString()
+						.equalsIgnoreCase(requestMethod);
+	}
+
+	private Response toResponse(final HttpResponse<InputStream> r,
+			final int timeout, final Deadline deadline) {
+		logger.debug("Received " + r.version() + " response from "
+				+ r.uri().getHost() + " with status " + r.statusCode());
+		InputStream body = r.body();
+		if (timeout > 0 || deadline != null) {
+			body = new TimedInputStream(body, timeout, deadline);
+		}
+		return new Response(r.statusCode(), r.headers().map(), body);
+	}
+
+	private static ScheduledThreadPoolExecutor getTimer() {
+		ScheduledThreadPoolExecutor t = timer;
+		if (t == null) {
+			synchronized (HttpClientTransport.class) {
+				t = timer;
+				if (t == null) {
+					t = new ScheduledThreadPoolExecutor(1,
+							new AsyncUtil.DaemonThreadFactory(
+									"socialauth-read-timeout"));
+					// most reads finish in time, do not keep their tasks
+					t.setRemoveOnCancelPolicy(true);
+					timer = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	private HttpClient getClient() {
+		HttpClient c = client;
+		if (c == null) {
+			synchronized (this) {
+				c = client;
+				if (c == null) {
+					HttpClient.Builder builder = HttpClient.newBuilder()
+							.version(version)
+							.followRedirects(HttpClient.Redirect.NORMAL);
+					if (proxyAddress != null) {
+						builder.proxy(ProxySelector.of(proxyAddress));
+					}
+					if (timeoutValue > 0) {
+						logger.debug("Setting connection timeout : "
+								+ timeoutValue);
+						builder.connectTimeout(Duration
+								.ofMillis(timeoutValue));
+					}
+					c = builder.build();
+					client = c;
+				}
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Releases the HttpClient of this transport. On Java 21 and later it is
+	 * closed once its pending requests complete; on earlier versions, which
+	 * have no way to close it, its threads stop when it is garbage collected.
+	 * A later request builds a new client.
+	 */
+	public synchronized void close() {
+		release(client);
+		client = null;
+	}
+
+	private static void release(final HttpClient c) {
+		if (c instanceof AutoCloseable) {
+			final AutoCloseable closeable = (AutoCloseable) c;
+			// close waits for the pending requests, do not block the caller
+			try {
+				AsyncUtil.getDefaultExecutor().execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							closeable.close();
+						} catch (Exception e) {
+							logger.debug("Failed to close HttpClient", e);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				logger.debug("HttpClient close rejected", e);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void setProxyConfig(final String host, final int port) {
+		if (host != null) {
+			int proxyPort = port;
+			if (proxyPort < 0) {
+				proxyPort = 0;
+			}
+			logger.debug("Setting proxy - Host : " + host + "   port : " + port);
+			proxyAddress = new InetSocketAddress(host, proxyPort);
+			release(client);
+			client = null;
+		}
+	}
+
+	@Override
+	public synchronized void setConnectionTimeout(final int timeout) {
+		timeoutValue = timeout;
+		release(client);
+		client = null;
+	}
+
+	@Override
+	public void setReadTimeout(final int timeout) {
+		readTimeoutValue = timeout;
+	}
+
+	/**
+	 * Response body which closes itself when a read takes longer than the
+	 * read timeout or the time left to the deadline. Closing the body stream
+	 * of HttpClient wakes up the blocked read.
+	 */
+	private static class TimedInputStream extends FilterInputStream {
+		private final int timeout;
+		private final Deadline deadline;
+		private volatile boolean timedOut;
+		private final Runnable closer = new Runnable() {
+			@Override
+			public void run() {
+				timedOut = true;
+				try {
+					in.close();
+				} catch (IOException e) {
+					logger.debug("Failed to close timed out response", e);
+				}
+			}
+		};
+
+		TimedInputStream(final InputStream in, final int timeout,
+				final Deadline deadline) {
+			super(in);
+			this.timeout = timeout;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public int read() throws IOException {
+			ScheduledFuture<?> task = schedule();
+			try {
+				return in.read();
+			} catch (IOException e) {
+				throw timedOut ? timeout(e) : e;
+			} finally {
+				task.cancel(false);
+			}
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			ScheduledFuture<?> task = schedule();
+			try {
+				return in.read(b, off, len);
+			} catch (IOException e) {
+				throw timedOut ? timeout(e) : e;
+			} finally {
+				task.cancel(false);
+			}
+		}
+
+		private ScheduledFuture<?> schedule() throws IOException {
+			long limit = timeout;
+			if (deadline != null) {
+				long left = deadline.remaining();
+				if (left <= 0) {
+					in.close();
+					throw new SocketTimeoutException("Deadline exceeded");
+				}
+				if (limit <= 0 || limit > left) {
+					limit = left;
+				}
+			}
+			if (timedOut) {
+				throw new SocketTimeoutException("Read timed out");
+			}
+			return getTimer().schedule(closer, limit, TimeUnit.MILLISECONDS);
+		}
+
+		private static SocketTimeoutException timeout(final IOException cause) {
+			SocketTimeoutException e = new SocketTimeoutException(
+					"Read timed out");
+			e.initCause(cause);
+			return e;
+		}
+	}
+}
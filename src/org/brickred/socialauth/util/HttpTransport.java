@@ -0,0 +1,111 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Strategy used by the OAuth consumers, strategies and providers to make HTTP
+ * requests. The default implementation is {@link PooledHttpTransport}; a
+ * different implementation can be installed through
+ * {@link HttpUtil#setTransport(HttpTransport)} or per consumer through
+ * {@link OAuthConsumer#setTransport(HttpTransport)}.
+ * 
+ * Implementations must be safe for use by concurrent threads, and should
+ * bound their time outs by the {@link Deadline} of the calling thread.
+ * 
+ */
+public interface HttpTransport {
+
+	/**
+	 * Makes HTTP request
+	 * 
+	 * @param urlStr
+	 *            the URL String
+	 * @param requestMethod
+	 *            Method type
+	 * @param body
+	 *            Body to pass in request.
+	 * @param header
+	 *            Header parameters
+	 * @return Response Object
+	 * @throws Exception
+	 */
+	public Response execute(String urlStr, String requestMethod, String body,
+			Map<String, String> header) throws Exception;
+
+	/**
+	 * Makes multipart HTTP request for uploading an image.
+	 * 
+	 * @param urlStr
+	 *            the URL String
+	 * @param requestMethod
+	 *            Method type
+	 * @param params
+	 *            Parameters to pass in request
+	 * @param header
+	 *            Header parameters
+	 * @param inputStream
+	 *            Input stream of image
+	 * @param fileName
+	 *            Image file name
+	 * @param fileParamName
+	 *            Image Filename parameter. It requires in some provider.
+	 * @return Response object
+	 * @throws Exception
+	 */
+	public Response execute(String urlStr, String requestMethod,
+			Map<String, String> params, Map<String, String> header,
+			InputStream inputStream, String fileName, String fileParamName)
+			throws Exception;
+
+	/**
+	 * Sets the proxy host and port.
+	 * 
+	 * @param host
+	 *            proxy host
+	 * @param port
+	 *            proxy port
+	 */
+	public void setProxyConfig(String host, int port);
+
+	/**
+	 * Sets the connection time out in milliseconds.
+	 * 
+	 * @param timeout
+	 *            connection timeout value
+	 */
+	public void setConnectionTimeout(int timeout);
+
+	/**
+	 * Sets the read time out in milliseconds, which bounds the wait for the
+	 * response and for each read of the content. Zero means no time out.
+	 * 
+	 * @param timeout
+	 *            read timeout value
+	 */
+	public void setReadTimeout(int timeout);
+}
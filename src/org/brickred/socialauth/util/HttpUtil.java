@@ -27,24 +27,12 @@ package org.brickred.socialauth.util;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.net.Proxy.Type;
-import java.net.URL;
-import java.net.URLEncoder;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
 
 import javax.net.ssl.KeyManager;
@@ -54,7 +42,6 @@ import javax.net.ssl.X509TrustManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.brickred.socialauth.exception.SocialAuthException;
 
 
 /**
@@ -66,15 +53,25 @@ import org.brickred.socialauth.exception.SocialAuthException;
  * 
  * This class may be completed rewritten in future, or may be removed if a
  * version of Commons HTTP Client compatible with AppEngine is released.
- * 
+ *
+ * Requests are made through the installed {@link HttpTransport}, which is a
+ * {@link PooledHttpTransport} by default.
+ *
  * @author tarunn@brickred.com
  * 
  */
 public class HttpUtil {
 
 	private static final Logger logger = LoggerFactory.getLogger(HttpUtil.class);
-	private static Proxy proxyObj = null;
-	private static int timeoutValue = 0;
+	private static volatile HttpTransport transport = new PooledHttpTransport();
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final int MAX_BUFFER_CAPACITY = 16384;
+	private static final ThreadLocal<StringBuilder> SIGNATURE_BUFFER = new ThreadLocal<StringBuilder>() {
+		@Override
+		protected StringBuilder initialValue() {
+			return new StringBuilder(1024);
+		}
+	};
 	static {
 		SSLContext ctx;
 		try {
@@ -98,7 +95,31 @@ public class HttpUtil {
 	}
 
 	/**
-	 * Makes HTTP request using java.net.HTTPURLConnection
+	 * Returns the transport which is used by default for making HTTP requests.
+	 * 
+	 * @return the default HTTP transport
+	 */
+	public static HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Replaces the transport which is used by default for making HTTP
+	 * requests. Proxy and connection timeout which were configured earlier are
+	 * not carried over to the given transport.
+	 * 
+	 * @param httpTransport
+	 *            the HTTP transport
+	 */
+	public static void setTransport(final HttpTransport httpTransport) {
+		if (httpTransport == null) {
+			throw new IllegalArgumentException("HTTP transport is null");
+		}
+		transport = httpTransport;
+	}
+
+	/**
+	 * Makes HTTP request using the default transport
 	 * 
 	 * @param urlStr
 	 *            the URL String
@@ -114,58 +135,11 @@ public class HttpUtil {
 	public static Response doHttpRequest(final String urlStr,
 			final String requestMethod, final String body,
 			final Map<String, String> header) throws Exception {
-		HttpURLConnection conn;
-		try {
-
-			URL url = new URL(urlStr);
-			if (proxyObj != null) {
-				conn = (HttpURLConnection) url.openConnection(proxyObj);
-			} else {
-				conn = (HttpURLConnection) url.openConnection();
-			}
-
-			if (requestMethod.equalsIgnoreCase(MethodType.POST.toString())
-					|| requestMethod
-							.equalsIgnoreCase(MethodType.PUT.toString())) {
-				conn.setDoOutput(true);
-			}
-
-			conn.setDoInput(true);
-
-			conn.setInstanceFollowRedirects(true);
-			if (timeoutValue > 0) {
-				logger.debug("Setting connection timeout : " + timeoutValue);
-				conn.setConnectTimeout(timeoutValue);
-			}
-			if (requestMethod != null) {
-				conn.setRequestMethod(requestMethod);
-			}
-			if (header != null) {
-				for (String key : header.keySet()) {
-					conn.setRequestProperty(key, header.get(key));
-				}
-			}
-
-			// If use POST or PUT must use this
-			OutputStreamWriter wr = null;
-			if (body != null) {
-				if (requestMethod != null
-						&& !MethodType.GET.toString().equals(requestMethod)
-						&& !MethodType.DELETE.toString().equals(requestMethod)) {
-					wr = new OutputStreamWriter(conn.getOutputStream());
-					wr.write(body);
-					wr.flush();
-				}
-			}
-			conn.connect();
-		} catch (Exception e) {
-			throw new SocialAuthException(e);
-		}
-		return new Response(conn);
-
+		return transport.execute(urlStr, requestMethod, body, header);
 	}
 
 	/**
+	 * Makes multipart HTTP request using the default transport
 	 * 
 	 * @param urlStr
 	 *            the URL String
@@ -188,96 +162,8 @@ public class HttpUtil {
 			final String requestMethod, final Map<String, String> params,
 			final Map<String, String> header, final InputStream inputStream,
 			final String fileName, final String fileParamName) throws Exception {
-		HttpURLConnection conn;
-		try {
-
-			URL url = new URL(urlStr);
-			if (proxyObj != null) {
-				conn = (HttpURLConnection) url.openConnection(proxyObj);
-			} else {
-				conn = (HttpURLConnection) url.openConnection();
-			}
-
-			if (requestMethod.equalsIgnoreCase(MethodType.POST.toString())
-					|| requestMethod
-							.equalsIgnoreCase(MethodType.PUT.toString())) {
-				conn.setDoOutput(true);
-			}
-
-			conn.setDoInput(true);
-
-			conn.setInstanceFollowRedirects(true);
-			if (timeoutValue > 0) {
-				logger.debug("Setting connection timeout : " + timeoutValue);
-				conn.setConnectTimeout(timeoutValue);
-			}
-			if (requestMethod != null) {
-				conn.setRequestMethod(requestMethod);
-			}
-			if (header != null) {
-				for (String key : header.keySet()) {
-					conn.setRequestProperty(key, header.get(key));
-				}
-			}
-
-			// If use POST or PUT must use this
-			OutputStream os = null;
-			if (inputStream != null) {
-				if (requestMethod != null
-						&& !MethodType.GET.toString().equals(requestMethod)
-						&& !MethodType.DELETE.toString().equals(requestMethod)) {
-					logger.debug(requestMethod + " request");
-					String boundary = "----Socialauth-posting"
-							+ System.currentTimeMillis();
-					conn.setRequestProperty("Content-Type",
-							"multipart/form-data; boundary=" + boundary);
-					boundary = "--" + boundary;
-
-					os = conn.getOutputStream();
-					DataOutputStream out = new DataOutputStream(os);
-					write(out, boundary + "\r\n");
-
-					if (fileParamName != null) {
-						write(out, "Content-Disposition: form-data; name=\""
-								+ fileParamName + "\"; filename=\"" + fileName
-								+ "\"\r\n");
-					} else {
-						write(out,
-								"Content-Disposition: form-data;  filename=\""
-										+ fileName + "\"\r\n");
-					}
-					write(out, "Content-Type: " + "multipart/form-data"
-							+ "\r\n\r\n");
-					int b;
-					while ((b = inputStream.read()) != -1) {
-						out.write(b);
-					}
-					// out.write(imageFile);
-					write(out, "\r\n");
-
-					Iterator<Map.Entry<String, String>> entries = params
-							.entrySet().iterator();
-					while (entries.hasNext()) {
-						Map.Entry<String, String> entry = entries.next();
-						write(out, boundary + "\r\n");
-						write(out, "Content-Disposition: form-data; name=\""
-								+ entry.getKey() + "\"\r\n");
-						write(out,
-								"Content-Type: text/plain; charset=UTF-8\r\n\r\n");
-						write(out, entry.getValue());
-						write(out, "\r\n");
-					}
-
-					write(out, boundary + "--\r\n");
-					write(out, "\r\n");
-				}
-			}
-			conn.connect();
-		} catch (Exception e) {
-			throw new SocialAuthException(e);
-		}
-		return new Response(conn);
-
+		return transport.execute(urlStr, requestMethod, params, header,
+				inputStream, fileName, fileParamName);
 	}
 
 	/**
@@ -291,68 +177,154 @@ public class HttpUtil {
 	 */
 	public static String buildParams(final Map<String, String> params)
 			throws Exception {
-		List<String> argList = new ArrayList<String>();
+		StringBuilder s = new StringBuilder(params.size() * 32);
+		appendParams(s, params, false);
+		return s.toString();
+	}
 
-		for (String key : params.keySet()) {
+	/**
+	 * Generates the OAuth signature base string, which is the encoded method,
+	 * URL and canonical query string joined by '&amp;'. The query string is
+	 * encoded twice as required by OAuth, in the same pass that builds it.
+	 * 
+	 * @param method
+	 *            the HTTP method
+	 * @param url
+	 *            the request URL without query string
+	 * @param params
+	 *            the request parameters
+	 * @return the signature base string
+	 */
+	public static String buildSignatureBase(final String method,
+			final String url, final Map<String, String> params) {
+		StringBuilder s = SIGNATURE_BUFFER.get();
+		s.setLength(0);
+		appendEncoded(s, method, false);
+		s.append('&');
+		appendEncoded(s, url, false);
+		s.append('&');
+		appendParams(s, params, true);
+		String base = s.toString();
+		if (s.capacity() > MAX_BUFFER_CAPACITY) {
+			SIGNATURE_BUFFER.remove();
+		}
+		return base;
+	}
+
+	/**
+	 * Appends the parameters with a non empty value, sorted by name, as
+	 * name=value pairs separated by '&amp;'. Values are percent encoded. If
+	 * encodeTwice is true the whole query string is encoded once more, as it
+	 * appears in the signature base string.
+	 */
+	private static void appendParams(final StringBuilder s,
+			final Map<String, String> params, final boolean encodeTwice) {
+		String[] keys = params.keySet().toArray(new String[params.size()]);
+		Arrays.sort(keys);
+		boolean first = true;
+		for (String key : keys) {
 			String val = params.get(key);
-			if (val != null && val.length() > 0) {
-				String arg = key + "=" + encodeURIComponent(val);
-				argList.add(arg);
+			if (val == null || val.length() == 0) {
+				continue;
 			}
-		}
-		Collections.sort(argList);
-		StringBuilder s = new StringBuilder();
-		for (int i = 0; i < argList.size(); i++) {
-			s.append(argList.get(i));
-			if (i != argList.size() - 1) {
-				s.append("&");
+			if (!first) {
+				s.append(encodeTwice ? "%26" : "&");
 			}
+			first = false;
+			if (encodeTwice) {
+				appendEncoded(s, key, false);
+				s.append("%3D");
+			} else {
+				s.append(key).append('=');
+			}
+			appendEncoded(s, val, encodeTwice);
 		}
-		return s.toString();
 	}
 
-	private static final String ALLOWED_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_.!~*'()";
-
+	/**
+	 * Percent encodes the given value as per RFC 3986, as required by OAuth.
+	 * Only the unreserved characters ALPHA, DIGIT, '-', '.', '_' and '~' are
+	 * left as they are.
+	 * 
+	 * @param value
+	 *            value to encode
+	 * @return the encoded value or an empty string if value is null
+	 * @throws Exception
+	 */
 	public static String encodeURIComponent(final String value)
 			throws Exception {
 		if (value == null) {
 			return "";
 		}
-
-		try {
-			return URLEncoder.encode(value, "utf-8")
-					// OAuth encodes some characters differently:
-					.replace("+", "%20").replace("*", "%2A")
-					.replace("%7E", "~");
-			// This could be done faster with more hand-crafted code.
-		} catch (UnsupportedEncodingException wow) {
-			throw new SocialAuthException(wow.getMessage(), wow);
+		int len = value.length();
+		int i = 0;
+		while (i < len && isUnreserved(value.charAt(i))) {
+			i++;
+		}
+		if (i == len) {
+			return value;
 		}
+		StringBuilder s = new StringBuilder(len + 16);
+		appendEncoded(s, value, false);
+		return s.toString();
 	}
 
-	/*
-	 * public static String encodeURIComponent(final String input) { if (input
-	 * == null || input.trim().length() == 0) { return input; }
+	/**
+	 * Appends the RFC 3986 percent encoded form of the given value to the
+	 * builder in a single pass. If encodeTwice is true, the value is encoded
+	 * as if the encoded form was encoded once more, that is '%' is written as
+	 * "%25".
 	 * 
-	 * int l = input.length(); StringBuilder o = new StringBuilder(l * 3); try {
-	 * for (int i = 0; i < l; i++) { String e = input.substring(i, i + 1); if
-	 * (ALLOWED_CHARS.indexOf(e) == -1) { byte[] b = e.getBytes("utf-8");
-	 * o.append(getHex(b)); continue; } o.append(e); } return o.toString(); }
-	 * catch (UnsupportedEncodingException e) { e.printStackTrace(); } return
-	 * input; }
+	 * @param s
+	 *            builder to append to
+	 * @param value
+	 *            value to encode, null is treated as an empty string
+	 * @param encodeTwice
+	 *            true to encode the value twice
 	 */
-
-	private static String getHex(final byte buf[]) {
-		StringBuilder o = new StringBuilder(buf.length * 3);
-		for (int i = 0; i < buf.length; i++) {
-			int n = buf[i] & 0xff;
-			o.append("%");
-			if (n < 0x10) {
-				o.append("0");
+	public static void appendEncoded(final StringBuilder s,
+			final String value, final boolean encodeTwice) {
+		if (value == null) {
+			return;
+		}
+		int len = value.length();
+		for (int i = 0; i < len; i++) {
+			char c = value.charAt(i);
+			if (isUnreserved(c)) {
+				s.append(c);
+			} else if (c < 0x80) {
+				appendByte(s, c, encodeTwice);
+			} else if (c < 0x800) {
+				appendByte(s, 0xC0 | (c >> 6), encodeTwice);
+				appendByte(s, 0x80 | (c & 0x3F), encodeTwice);
+			} else if (Character.isHighSurrogate(c) && i + 1 < len
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, value.charAt(++i));
+				appendByte(s, 0xF0 | (cp >> 18), encodeTwice);
+				appendByte(s, 0x80 | ((cp >> 12) & 0x3F), encodeTwice);
+				appendByte(s, 0x80 | ((cp >> 6) & 0x3F), encodeTwice);
+				appendByte(s, 0x80 | (cp & 0x3F), encodeTwice);
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogate, encoded as '?' like URLEncoder does
+				appendByte(s, '?', encodeTwice);
+			} else {
+				appendByte(s, 0xE0 | (c >> 12), encodeTwice);
+				appendByte(s, 0x80 | ((c >> 6) & 0x3F), encodeTwice);
+				appendByte(s, 0x80 | (c & 0x3F), encodeTwice);
 			}
-			o.append(Long.toString(n, 16).toUpperCase());
 		}
-		return o.toString();
+	}
+
+	private static boolean isUnreserved(final char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_'
+				|| c == '~';
+	}
+
+	private static void appendByte(final StringBuilder s, final int b,
+			final boolean encodeTwice) {
+		s.append(encodeTwice ? "%25" : "%");
+		s.append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
 	}
 
 	/**
@@ -446,14 +418,7 @@ public class HttpUtil {
 	 *            proxy port
 	 */
 	public static void setProxyConfig(final String host, final int port) {
-		if (host != null) {
-			int proxyPort = port;
-			if (proxyPort < 0) {
-				proxyPort = 0;
-			}
-			logger.debug("Setting proxy - Host : " + host + "   port : " + port);
-			proxyObj = new Proxy(Type.HTTP, new InetSocketAddress(host, port));
-		}
+		transport.setProxyConfig(host, port);
 	}
 
 	/**
@@ -464,7 +429,73 @@ public class HttpUtil {
 	 *            httpconnection timeout value
 	 */
 	public static void setConnectionTimeout(final int timeout) {
-		timeoutValue = timeout;
+		transport.setConnectionTimeout(timeout);
+	}
+
+	/**
+	 * Sets the read timeout of the default transport.
+	 * 
+	 * @param timeout
+	 *            read timeout value in milliseconds
+	 */
+	public static void setReadTimeout(final int timeout) {
+		transport.setReadTimeout(timeout);
+	}
+
+	/**
+	 * Writes a multipart/form-data body which contains the given image and
+	 * parameters.
+	 * 
+	 * @param out
+	 *            stream to write the body to
+	 * @param boundary
+	 *            the boundary given in the Content-Type header
+	 * @param params
+	 *            Parameters to pass in request
+	 * @param inputStream
+	 *            Input stream of image
+	 * @param fileName
+	 *            Image file name
+	 * @param fileParamName
+	 *            Image Filename parameter. It requires in some provider.
+	 * @throws IOException
+	 */
+	static void writeMultipart(final DataOutputStream out,
+			final String boundary, final Map<String, String> params,
+			final InputStream inputStream, final String fileName,
+			final String fileParamName) throws IOException {
+		String delimiter = "--" + boundary;
+		write(out, delimiter + "\r\n");
+
+		if (fileParamName != null) {
+			write(out, "Content-Disposition: form-data; name=\""
+					+ fileParamName + "\"; filename=\"" + fileName + "\"\r\n");
+		} else {
+			write(out, "Content-Disposition: form-data;  filename=\""
+					+ fileName + "\"\r\n");
+		}
+		write(out, "Content-Type: " + "multipart/form-data" + "\r\n\r\n");
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = inputStream.read(buf)) != -1) {
+			out.write(buf, 0, n);
+		}
+		write(out, "\r\n");
+
+		if (params != null) {
+			for (Map.Entry<String, String> entry : params.entrySet()) {
+				write(out, delimiter + "\r\n");
+				write(out, "Content-Disposition: form-data; name=\""
+						+ entry.getKey() + "\"\r\n");
+				write(out, "Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+				write(out, entry.getValue());
+				write(out, "\r\n");
+			}
+		}
+
+		write(out, delimiter + "--\r\n");
+		write(out, "\r\n");
+		out.flush();
 	}
 
 	public static void write(final DataOutputStream out, final String outStr)
@@ -0,0 +1,113 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps the state of pending authentication flows in memory. Entries expire
+ * after a time to live; expired entries are purged while new entries are
+ * added.
+ * 
+ */
+public class InMemoryPendingAuthStore implements PendingAuthStore {
+
+	/**
+	 * Default time to live of a pending flow in milliseconds (10 minutes)
+	 */
+	public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+
+	private static final long PURGE_INTERVAL = 60 * 1000L;
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private final long ttl;
+	private volatile long lastPurge = System.currentTimeMillis();
+
+	public InMemoryPendingAuthStore() {
+		this(DEFAULT_TTL);
+	}
+
+	/**
+	 * 
+	 * @param ttl
+	 *            time to live of a pending flow in milliseconds
+	 */
+	public InMemoryPendingAuthStore(final long ttl) {
+		this.ttl = ttl;
+	}
+
+	@Override
+	public void put(final String key, final Map<String, String> state) {
+		long now = System.currentTimeMillis();
+		purge(now);
+		entries.put(key, new Entry(state, now + ttl));
+	}
+
+	@Override
+	public Map<String, String> remove(final String key) {
+		Entry entry = entries.remove(key);
+		if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+			return null;
+		}
+		return entry.state;
+	}
+
+	/**
+	 * Returns the number of pending flows, including expired flows which have
+	 * not been purged yet.
+	 * 
+	 * @return number of pending flows
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	private void purge(final long now) {
+		if (now - lastPurge < PURGE_INTERVAL) {
+			return;
+		}
+		lastPurge = now;
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().expiresAt <= now) {
+				it.remove();
+			}
+		}
+	}
+
+	private static class Entry {
+		final Map<String, String> state;
+		final long expiresAt;
+
+		Entry(final Map<String, String> state, final long expiresAt) {
+			this.state = state;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread safe cache of values keyed by numeric id. Entries expire
+ * after a time to live, and the least recently used entries are evicted when
+ * the cache is full. It is meant to be shared by all users of a provider, to
+ * avoid fetching the same data again for every user.
+ * 
+ * @param <V>
+ *            type of cached values
+ */
+public class LookupCache<V> {
+
+	/**
+	 * Default maximum number of entries
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	/**
+	 * Default time to live of an entry in milliseconds (1 hour)
+	 */
+	public static final long DEFAULT_TTL = 60 * 60 * 1000L;
+
+	private final LinkedHashMap<Long, Entry<V>> entries;
+	private int maxSize;
+	private long ttl;
+
+	/**
+	 * Creates a cache with the default size and time to live.
+	 */
+	public LookupCache() {
+		this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+	}
+
+	/**
+	 * 
+	 * @param maxSize
+	 *            maximum number of entries
+	 * @param ttl
+	 *            time to live of an entry in milliseconds
+	 */
+	public LookupCache(final int maxSize, final long ttl) {
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		entries = new LinkedHashMap<Long, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<Long, Entry<V>> eldest) {
+				return size() > LookupCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached value of the given id.
+	 * 
+	 * @param id
+	 *            the id
+	 * @return the cached value, or null if it is missing or expired
+	 */
+	public synchronized V get(final long id) {
+		return getValue(id, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the cached values of the given ids.
+	 * 
+	 * @param ids
+	 *            the ids
+	 * @return map of id to value, containing only the ids found in the cache
+	 */
+	public synchronized Map<Long, V> getAll(final long ids[]) {
+		Map<Long, V> found = new HashMap<Long, V>();
+		long now = System.currentTimeMillis();
+		for (long id : ids) {
+			V value = getValue(id, now);
+			if (value != null) {
+				found.put(id, value);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Adds a value to the cache, replacing any previous value of the id.
+	 * 
+	 * @param id
+	 *            the id
+	 * @param value
+	 *            the value
+	 */
+	public synchronized void put(final long id, final V value) {
+		entries.put(id,
+				new Entry<V>(value, System.currentTimeMillis() + ttl));
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of entries, including expired entries which have not
+	 * been evicted yet.
+	 * 
+	 * @return number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Sets the maximum number of entries. Least recently used entries are
+	 * evicted if the cache holds more.
+	 * 
+	 * @param maxSize
+	 *            maximum number of entries
+	 */
+	public synchronized void setMaxSize(final int maxSize) {
+		this.maxSize = maxSize;
+		Iterator<Long> it = entries.keySet().iterator();
+		while (entries.size() > maxSize && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Sets the time to live of entries added from now on.
+	 * 
+	 * @param ttl
+	 *            time to live in milliseconds
+	 */
+	public synchronized void setTtl(final long ttl) {
+		this.ttl = ttl;
+	}
+
+	private V getValue(final long id, final long now) {
+		Entry<V> entry = entries.get(id);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiresAt <= now) {
+			entries.remove(id);
+			return null;
+		}
+		return entry.value;
+	}
+
+	private static final class Entry<V> {
+		final V value;
+		final long expiresAt;
+
+		Entry(final V value, final long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates OAuth nonces which are unique across threads, JVMs and nodes.
+ * 
+ * A nonce is made of a random node id, drawn once per JVM from SecureRandom,
+ * an id given to each thread on its first use and a counter owned by that
+ * thread. Generating a nonce therefore never blocks on entropy and threads do
+ * not contend on a shared counter. Two nonces can only collide if two JVMs
+ * draw the same 64 bit node id.
+ * 
+ */
+public class NonceGenerator {
+
+	private static final String NODE_ID = toHex(
+			new SecureRandom().nextLong(), 16);
+	private static final AtomicInteger threadIds = new AtomicInteger();
+	private static final ThreadLocal<Stripe> STRIPE = new ThreadLocal<Stripe>() {
+		@Override
+		protected Stripe initialValue() {
+			return new Stripe(NODE_ID
+					+ toHex(threadIds.getAndIncrement() & 0xFFFFFFFFL, 8));
+		}
+	};
+
+	/**
+	 * Returns a new nonce. It contains only hexadecimal digits.
+	 * 
+	 * @return the nonce
+	 */
+	public static String nextNonce() {
+		Stripe stripe = STRIPE.get();
+		return stripe.prefix + Long.toHexString(stripe.counter++);
+	}
+
+	private static String toHex(final long value, final int width) {
+		String hex = Long.toHexString(value);
+		StringBuilder sb = new StringBuilder(width);
+		for (int i = hex.length(); i < width; i++) {
+			sb.append('0');
+		}
+		return sb.append(hex).toString();
+	}
+
+	private static class Stripe {
+		private final String prefix;
+		private long counter;
+
+		Stripe(final String prefix) {
+			this.prefix = prefix;
+		}
+	}
+}
@@ -44,6 +44,7 @@ public class OAuthConfig implements Serializable {
 	private Class<?> providerImplClass;
 	private String customPermissions;
 	private String linkedInScope;
+	private int readTimeout;
 
 	/**
 	 * 
@@ -153,6 +154,27 @@ public class OAuthConfig implements Serializable {
 		this.providerImplClass = providerImplClass;
 	}
 
+	/**
+	 * Retrieves the read timeout of the provider
+	 * 
+	 * @return the read timeout in milliseconds, 0 if the timeout of the
+	 *         transport is used
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Updates the read timeout of the provider, which is used instead of the
+	 * read timeout of the transport
+	 * 
+	 * @param readTimeout
+	 *            the read timeout in milliseconds
+	 */
+	public void setReadTimeout(final int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder result = new StringBuilder();
@@ -24,17 +24,12 @@
  */
 package org.brickred.socialauth.util;
 
-import java.io.BufferedReader;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.commons.lang.StringUtils;
@@ -53,8 +48,12 @@ public class OAuthConsumer implements Serializable, Constants
 
 	private static final long serialVersionUID = -4560115102581632124L;
 	private static final Pattern AMPERSAND = Pattern.compile("&");
-	private final Logger logger = LoggerFactory.getLogger(OAuthConsumer.class);
+	private static final String[] REQUIRED_OAUTH_HEADERS_TO_SIGN = new String[] { OAUTH_CONSUMER_KEY, OAUTH_NONCE, OAUTH_TIMESTAMP, OAUTH_SIGNATURE_METHOD };
+	private static final Logger logger = LoggerFactory.getLogger(OAuthConsumer.class);
 	private OAuthConfig config;
+	private transient HttpTransport transport;
+	private transient volatile ReadTimeoutTransport timeoutTransport;
+	private transient String signingKeyPrefix;
 
 	/**
 	 * 
@@ -110,22 +109,15 @@ public class OAuthConsumer implements Serializable, Constants
 		if (url.length() == 0) {
 			throw new SignatureException("Please check URL");
 		}
-		String key = HttpUtil.encodeURIComponent(config.get_consumerSecret()) + "&";
+		String key = getSigningKeyPrefix();
 		if (token != null && token.getSecret() != null) {
 			key += HttpUtil.encodeURIComponent(token.getSecret());
 		}
 		try {
-			// get an hmac_sha1 key from the raw key bytes
-			SecretKeySpec signingKey = new SecretKeySpec(key.getBytes("UTF-8"), "HMAC-SHA1");
-
-			// get an hmac_sha1 Mac instance and initialize with the signing key
-			Mac mac = Mac.getInstance("HmacSHA1");
-			mac.init(signingKey);
-
-			String data = HttpUtil.encodeURIComponent(method) + "&" + HttpUtil.encodeURIComponent(url) + "&" + HttpUtil.encodeURIComponent(HttpUtil.buildParams(args));
+			String data = HttpUtil.buildSignatureBase(method, url, args);
 			logger.debug("Signature data : " + data);
 			// compute the hmac on input data bytes
-			byte[] rawHmac = mac.doFinal(data.getBytes("UTF-8"));
+			byte[] rawHmac = HmacSha1Signer.sign(key, data.getBytes("UTF-8"));
 
 			// base64-encode the hmac
 			logger.debug("Encoding raw HMAC to Base64");
@@ -137,6 +129,16 @@ public class OAuthConsumer implements Serializable, Constants
 		}
 	}
 
+	private String getSigningKeyPrefix() throws Exception
+	{
+		String prefix = signingKeyPrefix;
+		if (prefix == null) {
+			prefix = HttpUtil.encodeURIComponent(config.get_consumerSecret()) + "&";
+			signingKeyPrefix = prefix;
+		}
+		return prefix;
+	}
+
 	/**
 	 * It obtains the request token. The Request Token is a temporary token used to initiate User authorization.
 	 * 
@@ -168,15 +170,15 @@ public class OAuthConsumer implements Serializable, Constants
 		if (MethodType.POST.toString().equals(config.get_transportName())) {
 			Map<String, String> headerParam = new HashMap<String, String>();
 			headerParam.put("Content-Type", "application/x-www-form-urlencoded");
-			response = HttpUtil.doHttpRequest(reqURL, config.get_transportName(), HttpUtil.buildParams(params), headerParam);
+			response = getTransport().execute(reqURL, config.get_transportName(), HttpUtil.buildParams(params), headerParam);
 		} else if (MethodType.GET.toString().equals(config.get_transportName())) {
 			reqURL += reqURL.contains("?") ? "&" : "?" + HttpUtil.buildParams(params);
-			response = HttpUtil.doHttpRequest(reqURL, config.get_transportName(), null, null);
+			response = getTransport().execute(reqURL, config.get_transportName(), null, null);
 		}
 
 		if (response.getStatus() == 200) {
 			token = new AccessGrant();
-			parse(response.getInputStream(), token);
+			parse(response, token);
 		} else {
 			logger.error("Error while fetching Request Token with response code - " + response.getStatus());
 			throw new SocialAuthConfigurationException("Application keys are not correct. " + "The server running the application should be same that was registered to get the keys.");
@@ -224,7 +226,7 @@ public class OAuthConsumer implements Serializable, Constants
 		logger.debug("Access Token URL : " + reqURL);
 		Response response = null;
 		try {
-			response = HttpUtil.doHttpRequest(reqURL, config.get_transportName(), body, null);
+			response = getTransport().execute(reqURL, config.get_transportName(), body, null);
 		} catch (Exception e) {
 			logger.debug("Error while getting Access Token");
 			throw new SocialAuthException("Error while getting Access Token", e);
@@ -232,7 +234,7 @@ public class OAuthConsumer implements Serializable, Constants
 
 		if (response.getStatus() == 200) {
 			accessToken = new AccessGrant();
-			parse(response.getInputStream(), accessToken);
+			parse(response, accessToken);
 		} else {
 			throw new SocialAuthException("Unable to retrieve the access token. Status: " + response.getStatus());
 		}
@@ -371,23 +373,19 @@ public class OAuthConsumer implements Serializable, Constants
 		} else {
 			url += "?" + HttpUtil.buildParams(params);
 		}
-		return HttpUtil.doHttpRequest(url, methodName, body, headerMap);
+		return execute(url, methodName, body, headerMap, token);
 	}
 
-	private void parse(final InputStream in, final AccessGrant token) throws Exception
+	private void parse(final Response response, final AccessGrant token) throws Exception
 	{
-		StringBuffer sb = new StringBuffer();
+		String body;
 		try {
-			BufferedReader reader = new BufferedReader(new InputStreamReader(in, ENCODING));
-			String line = null;
-			while ((line = reader.readLine()) != null) {
-				sb.append(line);
-			}
+			body = response.getResponseBodyAsString(ENCODING).trim();
 		} catch (Exception exc) {
 			throw new SocialAuthException("Failed to parse response");
 		}
 
-		String[] pairs = sb.toString().split("&");
+		String[] pairs = body.split("&");
 		String key = null, secret = null;
 		for (String pair : pairs) {
 			int idx = pair.indexOf('=');
@@ -413,7 +411,7 @@ public class OAuthConsumer implements Serializable, Constants
 	}
 
 	/**
-	 * Adds nonce and timestamp in given parameter map.
+	 * Adds nonce and timestamp in given parameter map. The nonce is taken from {@link NonceGenerator}, so requests signed in the same millisecond get different nonces.
 	 * 
 	 * @param params
 	 */
@@ -421,7 +419,7 @@ public class OAuthConsumer implements Serializable, Constants
 	{
 		long ts = System.currentTimeMillis();
 		params.put(OAUTH_TIMESTAMP, String.valueOf(ts / 1000));
-		params.put(OAUTH_NONCE, String.valueOf(ts));
+		params.put(OAUTH_NONCE, NonceGenerator.nextNonce());
 	}
 
 	/**
@@ -453,32 +451,134 @@ public class OAuthConsumer implements Serializable, Constants
 	public String getAuthHeaderValue(final Map<String, String> params) throws Exception
 	{
 		logger.debug("Genrating Authorization header for given parameters : " + params);
-		StringBuilder headerStr = new StringBuilder();
-		String[] REQUIRED_OAUTH_HEADERS_TO_SIGN = new String[] { OAUTH_CONSUMER_KEY, OAUTH_NONCE, OAUTH_TIMESTAMP, OAUTH_SIGNATURE_METHOD };
+		StringBuilder headerStr = new StringBuilder(256).append("OAuth");
 		for (String key : REQUIRED_OAUTH_HEADERS_TO_SIGN) {
-			String value = HttpUtil.encodeURIComponent(params.get(key));
-			headerStr.append(',').append(key).append('=').append('"').append(value).append('"');
+			appendHeaderParam(headerStr, key, params.get(key));
 		}
 		if (params.get(OAUTH_VERSION) != null) {
-			headerStr.append(',').append(OAUTH_VERSION).append('=').append('"').append(HttpUtil.encodeURIComponent(params.get(OAUTH_VERSION))).append('"');
+			appendHeaderParam(headerStr, OAUTH_VERSION, params.get(OAUTH_VERSION));
 		}
 		if (params.get(OAUTH_TOKEN) != null) {
-			headerStr.append(',').append(OAUTH_TOKEN).append('=').append('"').append(HttpUtil.encodeURIComponent(params.get(OAUTH_TOKEN))).append('"');
+			appendHeaderParam(headerStr, OAUTH_TOKEN, params.get(OAUTH_TOKEN));
 		}
 		if (params.get(OAUTH_SIGNATURE) != null) {
-			headerStr.append(',').append(OAUTH_SIGNATURE).append('=').append('"').append(HttpUtil.encodeURIComponent(params.get(OAUTH_SIGNATURE))).append('"');
+			appendHeaderParam(headerStr, OAUTH_SIGNATURE, params.get(OAUTH_SIGNATURE));
 		}
-		headerStr.setCharAt(0, ' ');
-		headerStr.insert(0, "OAuth");
+		headerStr.setCharAt(5, ' ');
 		logger.debug("Authorize Header : " + headerStr.toString());
 		return headerStr.toString();
 	}
 
+	private static void appendHeaderParam(final StringBuilder headerStr, final String key, final String value)
+	{
+		headerStr.append(',').append(key).append('=').append('"');
+		HttpUtil.appendEncoded(headerStr, value, false);
+		headerStr.append('"');
+	}
+
 	public OAuthConfig getConfig()
 	{
 		return config;
 	}
 
+	/**
+	 * Retrieves the transport used for making HTTP requests. If no transport has been set, the default transport of {@link HttpUtil} is used.
+	 * 
+	 * @return the HTTP transport
+	 */
+	public HttpTransport getTransport()
+	{
+		HttpTransport t = transport;
+		if (t == null) {
+			t = HttpUtil.getTransport();
+		}
+		if (config.getReadTimeout() <= 0) {
+			return t;
+		}
+		ReadTimeoutTransport tt = timeoutTransport;
+		if (tt == null || tt.transport != t) {
+			tt = new ReadTimeoutTransport(t, config.getReadTimeout());
+			timeoutTransport = tt;
+		}
+		return tt;
+	}
+
+	/**
+	 * Updates the transport used for making HTTP requests.
+	 * 
+	 * @param transport
+	 *            the HTTP transport, or null to use the default transport of {@link HttpUtil}
+	 */
+	public void setTransport(final HttpTransport transport)
+	{
+		this.transport = transport;
+	}
+
+	/**
+	 * Makes a request on behalf of the given access token through the transport. If a {@link RequestThrottle} is enabled for the provider, the request
+	 * waits for its turn and the rate limit reported in the response is recorded.
+	 * 
+	 * @param url
+	 *            the URL String
+	 * @param methodName
+	 *            Method type
+	 * @param body
+	 *            Body to pass in request
+	 * @param headerParams
+	 *            Header parameters
+	 * @param token
+	 *            the access token, or null
+	 * @return Response Object
+	 * @throws Exception
+	 */
+	public Response execute(final String url, final String methodName, final String body, final Map<String, String> headerParams, final AccessGrant token) throws Exception
+	{
+		RequestThrottle throttle = RequestThrottle.getThrottle(config.getId());
+		if (throttle == null) {
+			return getTransport().execute(url, methodName, body, headerParams);
+		}
+		throttle.acquire(token);
+		Response response = getTransport().execute(url, methodName, body, headerParams);
+		throttle.update(token, response);
+		return response;
+	}
+
+	/**
+	 * Makes a multipart request on behalf of the given access token through the transport, throttled as
+	 * {@link #execute(String, String, String, Map, AccessGrant)}.
+	 * 
+	 * @param url
+	 *            the URL String
+	 * @param methodName
+	 *            Method type
+	 * @param params
+	 *            Parameters to pass in request
+	 * @param headerParams
+	 *            Header parameters
+	 * @param inputStream
+	 *            Input stream of image
+	 * @param fileName
+	 *            Image file name
+	 * @param fileParamName
+	 *            Image Filename parameter
+	 * @param token
+	 *            the access token, or null
+	 * @return Response Object
+	 * @throws Exception
+	 */
+	public Response execute(final String url, final String methodName, final Map<String, String> params, final Map<String, String> headerParams, final InputStream inputStream, final String fileName, final String fileParamName, final AccessGrant token) throws Exception
+	{
+		RequestThrottle throttle = RequestThrottle.getThrottle(config.getId());
+		if (throttle != null) {
+			throttle.acquire(token);
+		}
+		Response response = getTransport().execute(url, methodName, params, headerParams, inputStream, fileName, fileParamName);
+		if (throttle != null) {
+			throttle.update(token, response);
+		}
+		return response;
+	}
+
 	/**
 	 * 
 	 * @param reqURL
@@ -539,6 +639,6 @@ public class OAuthConsumer implements Serializable, Constants
 		} else {
 			url += "?" + HttpUtil.buildParams(params);
 		}
-		return HttpUtil.doHttpRequest(reqURL, methodName, paramsMap, headerMap, inputStream, fileName, fileParamName);
+		return execute(reqURL, methodName, paramsMap, headerMap, inputStream, fileName, fileParamName, token);
 	}
 }
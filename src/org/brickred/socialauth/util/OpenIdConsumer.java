@@ -26,10 +26,15 @@ package org.brickred.socialauth.util;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.brickred.socialauth.Profile;
+import org.brickred.socialauth.exception.SocialAuthException;
 
 
 /**
@@ -42,6 +47,8 @@ public class OpenIdConsumer {
 	private static final Logger logger = LoggerFactory.getLogger(OpenIdConsumer.class);
 	private static Map<String, String> associationMap;
 	private static Map<String, String> requestTokenMap;
+	private static volatile String associationParams;
+	private static final ConcurrentMap<String, Association> associations = new ConcurrentHashMap<String, Association>();
 	public static final String OPENID_REQUEST_TOKEN = "openid.ext2.request_token";
 	static {
 		associationMap = new HashMap<String, String>();
@@ -90,11 +97,113 @@ public class OpenIdConsumer {
 	 * @throws Exception
 	 */
 	public static String getAssociationURL(final String url) throws Exception {
-		String param = HttpUtil.buildParams(associationMap);
+		String param = associationParams;
+		if (param == null) {
+			param = HttpUtil.buildParams(associationMap);
+			associationParams = param;
+		}
 		char separator = url.indexOf('?') == -1 ? '?' : '&';
 		return url + separator + param;
 	}
 
+	/**
+	 * Returns an association handle for the given OpenID endpoint. Handles are
+	 * cached per endpoint until they expire, as given by "expires_in" in the
+	 * association response, and refreshed in the background when 90% of
+	 * their lifetime has passed. A request is made only when there is no
+	 * valid handle for the endpoint.
+	 * 
+	 * @param url
+	 *            OpenID endpoint URL
+	 * @param transport
+	 *            transport used for the association request
+	 * @return association handle, or an empty string if the provider did not
+	 *         return one
+	 * @throws Exception
+	 */
+	public static String getAssociationHandle(final String url,
+			final HttpTransport transport) throws Exception {
+		Association assoc = associations.get(url);
+		long now = System.currentTimeMillis();
+		if (assoc != null && assoc.expiresAt > now) {
+			if (assoc.refreshAt <= now
+					&& assoc.refreshing.compareAndSet(false, true)) {
+				refresh(url, transport, assoc);
+			}
+			return assoc.handle;
+		}
+		return associate(url, transport).handle;
+	}
+
+	private static void refresh(final String url,
+			final HttpTransport transport, final Association assoc) {
+		logger.debug("Refreshing association for " + url);
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					associate(url, transport);
+				} catch (Exception e) {
+					logger.warn("Failed to refresh association for " + url, e);
+				} finally {
+					assoc.refreshing.set(false);
+				}
+			}
+		};
+		// executed directly, so that the deadline of the login request which
+		// triggered the refresh is not carried over to it
+		try {
+			AsyncUtil.getDefaultExecutor().execute(task);
+		} catch (RejectedExecutionException e) {
+			logger.warn("Association refresh rejected", e);
+			assoc.refreshing.set(false);
+		}
+	}
+
+	private static Association associate(final String url,
+			final HttpTransport transport) throws Exception {
+		String associationURL = getAssociationURL(url);
+		Response r = transport.execute(associationURL,
+				MethodType.GET.toString(), null, null);
+		Map<String, String> values = new HashMap<String, String>();
+		try {
+			String body = r.getResponseBodyAsString(Constants.ENCODING);
+			for (String line : body.split("\n")) {
+				int idx = line.indexOf(':');
+				if (idx > 0) {
+					values.put(line.substring(0, idx), line.substring(idx + 1)
+							.trim());
+				}
+			}
+		} catch (Exception exc) {
+			throw new SocialAuthException("Failed to read response from  "
+					+ associationURL, exc);
+		} finally {
+			r.close();
+		}
+		String handle = values.get("assoc_handle");
+		if (handle == null) {
+			handle = "";
+		}
+		logger.debug("ASSOCCIATION : " + handle);
+		long expiresIn = 0;
+		if (values.get("expires_in") != null) {
+			try {
+				expiresIn = Long.parseLong(values.get("expires_in"));
+			} catch (NumberFormatException e) {
+				logger.warn("Invalid expires_in in association response : "
+						+ values.get("expires_in"));
+			}
+		}
+		Association assoc = new Association(handle, expiresIn * 1000);
+		if (handle.length() > 0 && expiresIn > 0) {
+			associations.put(url, assoc);
+		} else {
+			associations.remove(url);
+		}
+		return assoc;
+	}
+
 	/**
 	 * It obtains the request token. The Request Token is a temporary token used
 	 * to initiate User authorization.
@@ -148,4 +257,18 @@ public class OpenIdConsumer {
 		p.setValidatedId(requestParams.get("openid.identity"));
 		return p;
 	}
+
+	private static class Association {
+		final String handle;
+		final long expiresAt;
+		final long refreshAt;
+		final AtomicBoolean refreshing = new AtomicBoolean();
+
+		Association(final String handle, final long lifetime) {
+			long now = System.currentTimeMillis();
+			this.handle = handle;
+			this.expiresAt = now + lifetime;
+			this.refreshAt = now + lifetime * 9 / 10;
+		}
+	}
 }
@@ -0,0 +1,70 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.util.Map;
+
+/**
+ * Stores the state of authentication flows between the redirection to the
+ * provider and the callback from it. The state is keyed by the value which
+ * the provider sends back in the callback, that is the OAuth 2 "state" or
+ * the OAuth 1 "oauth_token" parameter. With a store shared by several nodes,
+ * the callback can be handled by a different node than the one which started
+ * the flow.
+ * 
+ * The state of a flow is a small map of strings, such as the provider id, the
+ * request token or the OAuth 2 state and the success URL. It does not contain
+ * the provider configuration, which is looked up again when the callback is
+ * handled.
+ * 
+ * Implementations must be thread safe.
+ * 
+ */
+public interface PendingAuthStore {
+
+	/**
+	 * Stores the state of a flow.
+	 * 
+	 * @param key
+	 *            the flow key
+	 * @param state
+	 *            the state of the flow
+	 * @throws Exception
+	 */
+	public void put(String key, Map<String, String> state) throws Exception;
+
+	/**
+	 * Removes and returns the state of a flow. The state of a flow can be
+	 * removed only once, even if the store is shared by several nodes.
+	 * 
+	 * @param key
+	 *            the flow key
+	 * @return the state of the flow, or null if there is no state for the key
+	 *         or it has expired
+	 * @throws Exception
+	 */
+	public Map<String, String> remove(String key) throws Exception;
+}
@@ -0,0 +1,487 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Proxy.Type;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link HttpTransport}. It is built on java.net.HttpURLConnection so
+ * that it keeps working on Google AppEngine, and reuses keep-alive sockets
+ * through the JDK connection cache. Response bodies are closed instead of
+ * disconnected, which hands the socket back to the cache for the next request
+ * to the same host.
+ * 
+ * On top of that it limits the number of connections leased per host, evicts
+ * hosts which have been idle for longer than the idle timeout, reclaims leases
+ * whose response was never consumed, and keeps per host statistics which can be
+ * read through {@link #getStats()}. The number of idle sockets kept per host by
+ * the JDK is controlled by the <code>http.maxConnections</code> system
+ * property and should be set to the same value as the per host maximum.
+ * 
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+	/**
+	 * Default maximum number of connections leased per host
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+	/**
+	 * Default idle timeout in milliseconds
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+	/**
+	 * Default lease timeout in milliseconds
+	 */
+	public static final long DEFAULT_LEASE_TIMEOUT = 120000;
+
+	private static final long SWEEP_INTERVAL = 5000;
+	private static final Logger logger = LoggerFactory
+			.getLogger(PooledHttpTransport.class);
+
+	private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+	private final AtomicLong lastSweep = new AtomicLong(
+			System.currentTimeMillis());
+	private final int maxConnectionsPerHost;
+	private final long idleTimeout;
+	private final long leaseTimeout;
+	private volatile Proxy proxyObj;
+	private volatile int timeoutValue;
+	private volatile int readTimeoutValue;
+
+	public PooledHttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT,
+				DEFAULT_LEASE_TIMEOUT);
+	}
+
+	/**
+	 * 
+	 * @param maxConnectionsPerHost
+	 *            maximum number of connections leased at a time per host
+	 * @param idleTimeout
+	 *            time in milliseconds after which an unused host is evicted
+	 * @param leaseTimeout
+	 *            time in milliseconds after which a connection whose response
+	 *            was never consumed is reclaimed
+	 */
+	public PooledHttpTransport(final int maxConnectionsPerHost,
+			final long idleTimeout, final long leaseTimeout) {
+		if (maxConnectionsPerHost <= 0) {
+			throw new IllegalArgumentException(
+					"maxConnectionsPerHost should be greater than 0");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.idleTimeout = idleTimeout;
+		this.leaseTimeout = leaseTimeout;
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final String body, final Map<String, String> header)
+			throws Exception {
+		Lease lease = null;
+		HttpURLConnection conn;
+		try {
+			URL url = new URL(urlStr);
+			lease = acquire(url);
+			conn = openConnection(url, requestMethod, header);
+
+			// If use POST or PUT must use this
+			OutputStreamWriter wr = null;
+			if (body != null) {
+				if (requestMethod != null
+						&& !MethodType.GET.toString().equals(requestMethod)
+						&& !MethodType.DELETE.toString().equals(requestMethod)) {
+					wr = new OutputStreamWriter(conn.getOutputStream());
+					wr.write(body);
+					wr.flush();
+				}
+			}
+			conn.connect();
+		} catch (Exception e) {
+			if (lease != null) {
+				lease.close();
+			}
+			throw new SocialAuthException(e);
+		}
+		return new Response(conn, lease);
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final Map<String, String> params, final Map<String, String> header,
+			final InputStream inputStream, final String fileName,
+			final String fileParamName) throws Exception {
+		Lease lease = null;
+		HttpURLConnection conn;
+		try {
+			URL url = new URL(urlStr);
+			lease = acquire(url);
+			conn = openConnection(url, requestMethod, header);
+
+			// If use POST or PUT must use this
+			if (inputStream != null) {
+				if (requestMethod != null
+						&& !MethodType.GET.toString().equals(requestMethod)
+						&& !MethodType.DELETE.toString().equals(requestMethod)) {
+					logger.debug(requestMethod + " request");
+					String boundary = "----Socialauth-posting"
+							+ System.currentTimeMillis();
+					conn.setRequestProperty("Content-Type",
+							"multipart/form-data; boundary=" + boundary);
+					DataOutputStream out = new DataOutputStream(
+							conn.getOutputStream());
+					HttpUtil.writeMultipart(out, boundary, params, inputStream,
+							fileName, fileParamName);
+				}
+			}
+			conn.connect();
+		} catch (Exception e) {
+			if (lease != null) {
+				lease.close();
+			}
+			throw new SocialAuthException(e);
+		}
+		return new Response(conn, lease);
+	}
+
+	private HttpURLConnection openConnection(final URL url,
+			final String requestMethod, final Map<String, String> header)
+			throws Exception {
+		HttpURLConnection conn;
+		Proxy proxy = proxyObj;
+		if (proxy != null) {
+			conn = (HttpURLConnection) url.openConnection(proxy);
+		} else {
+			conn = (HttpURLConnection) url.openConnection();
+		}
+
+		if (requestMethod.equalsIgnoreCase(MethodType.POST.toString())
+				|| requestMethod.equalsIgnoreCase(MethodType.PUT.toString())) {
+			conn.setDoOutput(true);
+		}
+
+		conn.setDoInput(true);
+
+		conn.setInstanceFollowRedirects(true);
+		int timeout = Deadline.getConnectTimeout(timeoutValue);
+		if (timeout > 0) {
+			logger.debug("Setting connection timeout : " + timeout);
+			conn.setConnectTimeout(timeout);
+		}
+		int readTimeout = Deadline.getReadTimeout(readTimeoutValue);
+		if (readTimeout > 0) {
+			logger.debug("Setting read timeout : " + readTimeout);
+			conn.setReadTimeout(readTimeout);
+		}
+		if (requestMethod != null) {
+			conn.setRequestMethod(requestMethod);
+		}
+		if (header != null) {
+			for (Map.Entry<String, String> entry : header.entrySet()) {
+				conn.setRequestProperty(entry.getKey(), entry.getValue());
+			}
+		}
+		return conn;
+	}
+
+	private Lease acquire(final URL url) throws Exception {
+		evictIdle();
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+		int timeout = Deadline.getConnectTimeout(timeoutValue);
+		while (true) {
+			HostPool pool = pools.get(key);
+			if (pool == null) {
+				HostPool newPool = new HostPool(key, maxConnectionsPerHost);
+				pool = pools.putIfAbsent(key, newPool);
+				if (pool == null) {
+					pool = newPool;
+				}
+			}
+			Lease lease = pool.acquire(timeout > 0 ? timeout : leaseTimeout);
+			if (lease != null) {
+				return lease;
+			}
+			// the pool was evicted after it was looked up, use the new one
+		}
+	}
+
+	/**
+	 * Reclaims expired leases and removes hosts which have not been used for
+	 * longer than the idle timeout. It is called from the request path at most
+	 * once in every few seconds, but can also be called by the application.
+	 */
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		long last = lastSweep.get();
+		if (now - last < SWEEP_INTERVAL || !lastSweep.compareAndSet(last, now)) {
+			return;
+		}
+		for (HostPool pool : pools.values()) {
+			for (Lease lease : pool.leases) {
+				if (now - lease.acquiredAt > leaseTimeout) {
+					logger.warn("Reclaiming connection to " + pool.host
+							+ " whose response was not consumed in "
+							+ leaseTimeout + " ms");
+					pool.reclaimed.incrementAndGet();
+					lease.close();
+				}
+			}
+			synchronized (pool) {
+				if (pool.leases.isEmpty()
+						&& now - pool.lastUsed > idleTimeout) {
+					logger.debug("Evicting idle host " + pool.host);
+					pool.retired = true;
+					pools.remove(pool.host, pool);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the pool statistics keyed by host.
+	 * 
+	 * @return statistics of all the hosts currently known to this transport
+	 */
+	public Map<String, HostStats> getStats() {
+		Map<String, HostStats> stats = new TreeMap<String, HostStats>();
+		for (HostPool pool : pools.values()) {
+			stats.put(pool.host, new HostStats(pool));
+		}
+		return stats;
+	}
+
+	/**
+	 * Retrieves the maximum number of connections leased per host
+	 * 
+	 * @return the maximum number of connections per host
+	 */
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	@Override
+	public void setProxyConfig(final String host, final int port) {
+		if (host != null) {
+			int proxyPort = port;
+			if (proxyPort < 0) {
+				proxyPort = 0;
+			}
+			logger.debug("Setting proxy - Host : " + host + "   port : " + port);
+			proxyObj = new Proxy(Type.HTTP, new InetSocketAddress(host,
+					proxyPort));
+		}
+	}
+
+	@Override
+	public void setConnectionTimeout(final int timeout) {
+		timeoutValue = timeout;
+	}
+
+	@Override
+	public void setReadTimeout(final int timeout) {
+		readTimeoutValue = timeout;
+	}
+
+	private static class HostPool {
+		private final String host;
+		private final int maxConnections;
+		private final Semaphore permits;
+		private final Set<Lease> leases = Collections
+				.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong waits = new AtomicLong();
+		private final AtomicLong reclaimed = new AtomicLong();
+		private volatile long lastUsed = System.currentTimeMillis();
+		private boolean retired;
+
+		HostPool(final String host, final int maxConnections) {
+			this.host = host;
+			this.maxConnections = maxConnections;
+			this.permits = new Semaphore(maxConnections, true);
+		}
+
+		/**
+		 * Leases a connection, or returns null if the pool has been evicted
+		 * and must not be used any more.
+		 */
+		Lease acquire(final long timeout) throws Exception {
+			requests.incrementAndGet();
+			lastUsed = System.currentTimeMillis();
+			if (!permits.tryAcquire()) {
+				waits.incrementAndGet();
+				if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+					throw new SocialAuthException(
+							"Timed out waiting for a connection to " + host
+									+ ", all " + maxConnections
+									+ " connections are in use");
+				}
+			}
+			Lease lease = new Lease(this);
+			synchronized (this) {
+				if (retired) {
+					permits.release();
+					return null;
+				}
+				leases.add(lease);
+			}
+			return lease;
+		}
+
+		void release(final Lease lease) {
+			leases.remove(lease);
+			lastUsed = System.currentTimeMillis();
+			permits.release();
+		}
+	}
+
+	private static class Lease implements Closeable {
+		private final HostPool pool;
+		private final long acquiredAt = System.currentTimeMillis();
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Lease(final HostPool pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				pool.release(this);
+			}
+		}
+	}
+
+	/**
+	 * Statistics of the connections made to a single host.
+	 */
+	public static class HostStats {
+		private final String host;
+		private final int maxConnections;
+		private final int leased;
+		private final long requests;
+		private final long waits;
+		private final long reclaimed;
+		private final long lastUsed;
+
+		HostStats(final HostPool pool) {
+			host = pool.host;
+			maxConnections = pool.maxConnections;
+			leased = pool.leases.size();
+			requests = pool.requests.get();
+			waits = pool.waits.get();
+			reclaimed = pool.reclaimed.get();
+			lastUsed = pool.lastUsed;
+		}
+
+		/**
+		 * @return the host as scheme://host:port
+		 */
+		public String getHost() {
+			return host;
+		}
+
+		/**
+		 * @return maximum number of connections leased at a time
+		 */
+		public int getMaxConnections() {
+			return maxConnections;
+		}
+
+		/**
+		 * @return number of connections currently leased
+		 */
+		public int getLeased() {
+			return leased;
+		}
+
+		/**
+		 * @return number of connections which can be leased without waiting
+		 */
+		public int getAvailable() {
+			return maxConnections - leased;
+		}
+
+		/**
+		 * @return total number of requests made to the host
+		 */
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return number of requests which had to wait for a connection
+		 */
+		public long getWaits() {
+			return waits;
+		}
+
+		/**
+		 * @return number of leases reclaimed because the response was never
+		 *         consumed
+		 */
+		public long getReclaimed() {
+			return reclaimed;
+		}
+
+		/**
+		 * @return time in milliseconds when the host was last used
+		 */
+		public long getLastUsed() {
+			return lastUsed;
+		}
+
+		@Override
+		public String toString() {
+			return host + " {leased=" + leased + "/" + maxConnections
+					+ ", requests=" + requests + ", waits=" + waits
+					+ ", reclaimed=" + reclaimed + "}";
+		}
+	}
+}
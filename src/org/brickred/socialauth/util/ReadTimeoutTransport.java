@@ -0,0 +1,87 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Makes the requests of one provider with its own read timeout, through the
+ * transport which is otherwise used.
+ * 
+ */
+class ReadTimeoutTransport implements HttpTransport {
+
+	final HttpTransport transport;
+	private final int readTimeout;
+
+	ReadTimeoutTransport(final HttpTransport transport, final int readTimeout) {
+		this.transport = transport;
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final String body, final Map<String, String> header)
+			throws Exception {
+		return Deadline.withReadTimeout(readTimeout, new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return transport.execute(urlStr, requestMethod, body, header);
+			}
+		});
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final Map<String, String> params, final Map<String, String> header,
+			final InputStream inputStream, final String fileName,
+			final String fileParamName) throws Exception {
+		return Deadline.withReadTimeout(readTimeout, new Callable<Response>() {
+			@Override
+			public Response call() throws Exception {
+				return transport.execute(urlStr, requestMethod, params, header,
+						inputStream, fileName, fileParamName);
+			}
+		});
+	}
+
+	@Override
+	public void setProxyConfig(final String host, final int port) {
+		transport.setProxyConfig(host, port);
+	}
+
+	@Override
+	public void setConnectionTimeout(final int timeout) {
+		transport.setConnectionTimeout(timeout);
+	}
+
+	@Override
+	public void setReadTimeout(final int timeout) {
+		transport.setReadTimeout(timeout);
+	}
+}
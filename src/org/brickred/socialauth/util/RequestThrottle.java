@@ -0,0 +1,423 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.brickred.socialauth.exception.RateLimitExceededException;
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Throttle which keeps the requests of a provider within its rate limits, so
+ * that bulk operations such as contact syncs slow down before the provider
+ * starts refusing requests. Throttles are enabled per provider with
+ * {@link #enable(String, int, long)}, and apply to the requests made through
+ * the {@link OAuthConsumer} of the provider.
+ * <p>
+ * Each access token has a {@link TokenBucket}, and the provider can have one
+ * more for the limit of the application with
+ * {@link #setProviderLimit(int, long)}. A request waits until both buckets
+ * have a token; if that would take longer than the maximum wait or the
+ * {@link Deadline} of the calling thread, it fails at once with
+ * {@link RateLimitExceededException} and is not sent.
+ * </p>
+ * <p>
+ * The bucket of a token learns the actual limit from the
+ * "X-Rate-Limit-Limit", "X-Rate-Limit-Remaining" and "X-Rate-Limit-Reset"
+ * headers (also spelled "X-RateLimit-..."), as sent by Twitter and others,
+ * and stops requests for the time given by "Retry-After" when a request is
+ * refused with status 429.
+ * </p>
+ * <p>
+ * Blocking callers wait in {@link #acquire(AccessGrant)}. Asynchronous
+ * callers use {@link #supply(AccessGrant, Callable, Executor)}, which starts
+ * the call on the executor only once it may be sent, so that no thread of
+ * the executor waits for its turn.
+ * </p>
+ * 
+ */
+public class RequestThrottle {
+
+	/**
+	 * Default maximum time in milliseconds a request waits for its turn
+	 */
+	public static final long DEFAULT_MAX_WAIT = 30 * 1000L;
+
+	/**
+	 * Time in milliseconds requests are stopped after a status 429 without
+	 * "Retry-After" or reset header
+	 */
+	public static final long DEFAULT_RETRY_AFTER = 60 * 1000L;
+
+	/**
+	 * Maximum number of access tokens tracked per provider
+	 */
+	public static final int MAX_TOKENS = 10000;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RequestThrottle.class);
+
+	private static final ConcurrentMap<String, RequestThrottle> throttles = new ConcurrentHashMap<String, RequestThrottle>();
+	private static final ThreadLocal<RequestThrottle> admitted = new ThreadLocal<RequestThrottle>();
+	private static volatile ScheduledExecutorService scheduler;
+
+	private final String providerId;
+	private final int requests;
+	private final long period;
+	private final Map<String, TokenBucket> buckets;
+	private volatile TokenBucket providerBucket;
+	private volatile long maxWait = DEFAULT_MAX_WAIT;
+
+	/**
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @param requests
+	 *            number of requests allowed per access token and period,
+	 *            until the provider reports its own limit
+	 * @param period
+	 *            period in milliseconds
+	 */
+	public RequestThrottle(final String providerId, final int requests,
+			final long period) {
+		if (requests < 1 || period < 1) {
+			throw new IllegalArgumentException(
+					"Requests and period must be at least 1");
+		}
+		this.providerId = providerId;
+		this.requests = requests;
+		this.period = period;
+		buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					final Map.Entry<String, TokenBucket> eldest) {
+				return size() > MAX_TOKENS;
+			}
+		};
+	}
+
+	/**
+	 * Enables throttling of the requests of the given provider.
+	 * 
+	 * @param providerId
+	 *            the provider id, for example "twitter"
+	 * @param requests
+	 *            number of requests allowed per access token and period,
+	 *            until the provider reports its own limit
+	 * @param period
+	 *            period in milliseconds
+	 * @return the throttle, which can be further configured
+	 */
+	public static RequestThrottle enable(final String providerId,
+			final int requests, final long period) {
+		RequestThrottle throttle = new RequestThrottle(providerId, requests,
+				period);
+		throttles.put(providerId, throttle);
+		return throttle;
+	}
+
+	/**
+	 * Disables throttling of the requests of the given provider.
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 */
+	public static void disable(final String providerId) {
+		throttles.remove(providerId);
+	}
+
+	/**
+	 * Returns the throttle of the given provider.
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @return the throttle, or null if throttling is not enabled for the
+	 *         provider
+	 */
+	public static RequestThrottle getThrottle(final String providerId) {
+		return providerId == null ? null : throttles.get(providerId);
+	}
+
+	/**
+	 * Limits the requests of all access tokens of the provider together.
+	 * 
+	 * @param requests
+	 *            number of requests allowed per period
+	 * @param period
+	 *            period in milliseconds
+	 */
+	public void setProviderLimit(final int requests, final long period) {
+		providerBucket = new TokenBucket(requests, period);
+	}
+
+	/**
+	 * Sets the maximum time a request waits for its turn.
+	 * 
+	 * @param maxWait
+	 *            maximum wait in milliseconds
+	 */
+	public void setMaxWait(final long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Waits until a request with the given access token may be sent.
+	 * 
+	 * @param grant
+	 *            the access token, or null for a request without one
+	 * @throws RateLimitExceededException
+	 *             if the request could not be sent in time
+	 * @throws Exception
+	 */
+	public void acquire(final AccessGrant grant) throws Exception {
+		if (admitted.get() == this) {
+			admitted.remove();
+			return;
+		}
+		long wait = reserve(grant, Deadline.current());
+		if (wait < 0) {
+			throw new RateLimitExceededException("Rate limit of "
+					+ providerId + " reached");
+		}
+		if (wait > 0) {
+			logger.debug("Delaying request to " + providerId + " by " + wait
+					+ " ms");
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SocialAuthException(e);
+			}
+		}
+	}
+
+	/**
+	 * Runs the given call on the given executor once a request with the
+	 * given access token may be sent. The first request of the call with
+	 * this throttle does not wait again. The {@link Deadline} of the calling
+	 * thread, if any, also applies to the call.
+	 * 
+	 * @param grant
+	 *            the access token, or null for a call without one
+	 * @param call
+	 *            the blocking call
+	 * @param executor
+	 *            the executor to run the call on
+	 * @return future which completes with the result of the call, or with
+	 *         RateLimitExceededException if it could not be started in time
+	 */
+	public <T> CompletableFuture<T> supply(final AccessGrant grant,
+			final Callable<T> call, final Executor executor) {
+		final Deadline deadline = Deadline.current();
+		long wait = reserve(grant, deadline);
+		if (wait < 0) {
+			CompletableFuture<T> future = new CompletableFuture<T>();
+			future.completeExceptionally(new RateLimitExceededException(
+					"Rate limit of " + providerId + " reached"));
+			return future;
+		}
+		final Callable<T> admittedCall = new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				admitted.set(RequestThrottle.this);
+				try {
+					return deadline == null ? call.call() : deadline
+							.call(call);
+				} finally {
+					admitted.remove();
+				}
+			}
+		};
+		if (wait == 0) {
+			return AsyncUtil.supply(admittedCall, executor);
+		}
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		getScheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				AsyncUtil.supply(admittedCall, executor).whenComplete(
+						new BiConsumer<T, Throwable>() {
+							@Override
+							public void accept(final T result,
+									final Throwable t) {
+								if (t != null) {
+									future.completeExceptionally(t);
+								} else {
+									future.complete(result);
+								}
+							}
+						});
+			}
+		}, wait, TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	/**
+	 * Records the rate limit reported in the response to a request with the
+	 * given access token.
+	 * 
+	 * @param grant
+	 *            the access token, or null for a request without one
+	 * @param response
+	 *            the response
+	 */
+	public void update(final AccessGrant grant, final Response response) {
+		TokenBucket bucket = grant == null ? providerBucket
+				: getBucket(grant);
+		if (bucket == null) {
+			return;
+		}
+		long resetIn = getResetIn(getHeader(response, "X-Rate-Limit-Reset",
+				"X-RateLimit-Reset"));
+		if (response.getStatus() == 429) {
+			long retryAfter = RetryingHttpTransport.getRetryAfter(response);
+			if (retryAfter < 0) {
+				retryAfter = resetIn >= 0 ? resetIn : DEFAULT_RETRY_AFTER;
+			}
+			logger.debug("Rate limit of " + providerId
+					+ " reached, stopping requests for " + retryAfter + " ms");
+			bucket.block(retryAfter);
+			return;
+		}
+		int remaining = getInt(getHeader(response, "X-Rate-Limit-Remaining",
+				"X-RateLimit-Remaining"));
+		if (remaining >= 0) {
+			bucket.update(getInt(getHeader(response, "X-Rate-Limit-Limit",
+					"X-RateLimit-Limit")), remaining, resetIn);
+		}
+	}
+
+	/**
+	 * Takes a token from the bucket of the access token and of the provider.
+	 * 
+	 * @return time in milliseconds to wait, or -1 if it is too long
+	 */
+	private long reserve(final AccessGrant grant, final Deadline deadline) {
+		long limit = maxWait;
+		if (deadline != null) {
+			limit = Math.min(limit, deadline.remaining() - 1);
+		}
+		TokenBucket bucket = grant == null ? null : getBucket(grant);
+		TokenBucket provider = providerBucket;
+		long wait = bucket == null ? 0 : bucket.reserve();
+		if (provider != null) {
+			wait = Math.max(wait, provider.reserve());
+		}
+		if (wait > limit) {
+			if (bucket != null) {
+				bucket.cancel();
+			}
+			if (provider != null) {
+				provider.cancel();
+			}
+			return -1;
+		}
+		return wait;
+	}
+
+	private TokenBucket getBucket(final AccessGrant grant) {
+		String key = grant.getKey();
+		if (key == null) {
+			return null;
+		}
+		synchronized (buckets) {
+			TokenBucket bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new TokenBucket(requests, period);
+				buckets.put(key, bucket);
+			}
+			return bucket;
+		}
+	}
+
+	private static String getHeader(final Response response,
+			final String name, final String alternative) {
+		String value = response.getHeader(name);
+		return value != null ? value : response.getHeader(alternative);
+	}
+
+	private static int getInt(final String value) {
+		if (value == null) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the time until the window resets. The reset header is either
+	 * the time in epoch seconds, as sent by Twitter, or a number of seconds.
+	 * 
+	 * @return time in milliseconds, or -1 if unknown
+	 */
+	private static long getResetIn(final String value) {
+		if (value == null) {
+			return -1;
+		}
+		long reset;
+		try {
+			reset = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+		if (reset >= 1000000000L) {
+			return Math.max(0, reset * 1000L - System.currentTimeMillis());
+		}
+		return Math.max(0, reset * 1000L);
+	}
+
+	private static ScheduledExecutorService getScheduler() {
+		ScheduledExecutorService s = scheduler;
+		if (s == null) {
+			synchronized (RequestThrottle.class) {
+				s = scheduler;
+				if (s == null) {
+					s = Executors
+							.newSingleThreadScheduledExecutor(new AsyncUtil.DaemonThreadFactory(
+									"socialauth-throttle"));
+					scheduler = s;
+				}
+			}
+		}
+		return s;
+	}
+}
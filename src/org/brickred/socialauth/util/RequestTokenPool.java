@@ -0,0 +1,307 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of OAuth1 request tokens fetched ahead of time, so that a login
+ * redirect does not wait for the request token call. Pools are enabled per
+ * provider with {@link #enable(String, int, long)} and kept per consumer key,
+ * request token URL and callback URL, since a token is only valid for those.
+ * <p>
+ * Tokens are fetched in the background, one request at a time, after a
+ * token is taken. The pool is filled up to the number of tokens taken in the
+ * last {@link #RATE_WINDOW}, and never beyond its maximum size. Tokens older
+ * than the maximum age are dropped. When the pool is empty the token is
+ * fetched while the caller waits, as without a pool.
+ * </p>
+ * <p>
+ * A pool builds its own {@link OAuthConsumer} from the provider
+ * configuration and fetches through the default transport of
+ * {@link HttpUtil}. The background fetches are not bound by the
+ * {@link Deadline} of the login request which started them.
+ * </p>
+ * 
+ */
+public class RequestTokenPool {
+
+	/**
+	 * Default maximum number of pooled tokens of a provider
+	 */
+	public static final int DEFAULT_MAX_SIZE = 20;
+
+	/**
+	 * Default maximum age of a pooled token in milliseconds (5 minutes)
+	 */
+	public static final long DEFAULT_MAX_AGE = 5 * 60 * 1000L;
+
+	/**
+	 * Window in milliseconds over which the login rate is counted
+	 */
+	public static final long RATE_WINDOW = 10 * 1000L;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RequestTokenPool.class);
+
+	private static final ConcurrentMap<String, Settings> settings = new ConcurrentHashMap<String, Settings>();
+	private static final ConcurrentMap<String, RequestTokenPool> pools = new ConcurrentHashMap<String, RequestTokenPool>();
+
+	private final OAuthConsumer consumer;
+	private final String reqTokenURL;
+	private final String callbackURL;
+	private final int maxSize;
+	private final long maxAge;
+	private final ArrayDeque<Entry> tokens = new ArrayDeque<Entry>();
+	private final AtomicBoolean refilling = new AtomicBoolean();
+	private long windowStart;
+	private int windowTakes;
+	private int lastWindowTakes;
+
+	/**
+	 * 
+	 * @param config
+	 *            configuration of the provider
+	 * @param reqTokenURL
+	 *            request token URL
+	 * @param callbackURL
+	 *            callback URL the tokens are issued for
+	 * @param maxSize
+	 *            maximum number of pooled tokens
+	 * @param maxAge
+	 *            maximum age of a pooled token in milliseconds
+	 */
+	public RequestTokenPool(final OAuthConfig config,
+			final String reqTokenURL, final String callbackURL,
+			final int maxSize, final long maxAge) {
+		this.consumer = new OAuthConsumer(config);
+		this.reqTokenURL = reqTokenURL;
+		this.callbackURL = callbackURL;
+		this.maxSize = maxSize;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Enables pooling of request tokens for the given provider.
+	 * 
+	 * @param providerId
+	 *            the provider id, for example "twitter"
+	 * @param maxSize
+	 *            maximum number of pooled tokens
+	 * @param maxAge
+	 *            maximum age of a pooled token in milliseconds. It should be
+	 *            well below the time the provider keeps request tokens valid.
+	 */
+	public static void enable(final String providerId, final int maxSize,
+			final long maxAge) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"Pool size must be at least 1");
+		}
+		settings.put(providerId, new Settings(maxSize, maxAge));
+		clear(providerId);
+	}
+
+	/**
+	 * Disables pooling of request tokens for the given provider and drops
+	 * its pooled tokens.
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 */
+	public static void disable(final String providerId) {
+		settings.remove(providerId);
+		clear(providerId);
+	}
+
+	private static void clear(final String providerId) {
+		String prefix = providerId + '\n';
+		for (String key : pools.keySet()) {
+			if (key.startsWith(prefix)) {
+				pools.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * Returns the pool for the given provider and request, or null if pooling
+	 * is not enabled for the provider.
+	 * 
+	 * @param providerId
+	 *            the provider id
+	 * @param config
+	 *            configuration of the provider
+	 * @param reqTokenURL
+	 *            request token URL
+	 * @param callbackURL
+	 *            callback URL
+	 * @return the pool, or null
+	 */
+	public static RequestTokenPool getPool(final String providerId,
+			final OAuthConfig config, final String reqTokenURL,
+			final String callbackURL) {
+		Settings s = settings.get(providerId);
+		if (s == null) {
+			return null;
+		}
+		String key = providerId + '\n' + config.get_consumerKey()
+				+ '\n' + reqTokenURL + '\n' + callbackURL;
+		RequestTokenPool pool = pools.get(key);
+		if (pool == null) {
+			pool = new RequestTokenPool(config, reqTokenURL, callbackURL,
+					s.maxSize, s.maxAge);
+			RequestTokenPool existing = pools.putIfAbsent(key, pool);
+			if (existing != null) {
+				pool = existing;
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Takes a request token from the pool, or fetches one if the pool is
+	 * empty. A token is never handed out twice.
+	 * 
+	 * @return the request token
+	 * @throws Exception
+	 */
+	public AccessGrant take() throws Exception {
+		AccessGrant token = null;
+		long now = System.currentTimeMillis();
+		synchronized (tokens) {
+			countTake(now);
+			Entry entry;
+			while ((entry = tokens.pollFirst()) != null) {
+				if (now - entry.mintedAt < maxAge) {
+					token = entry.token;
+					break;
+				}
+			}
+		}
+		refill();
+		if (token == null) {
+			logger.debug("Request token pool is empty, fetching token");
+			token = consumer.getRequestToken(reqTokenURL, callbackURL);
+		}
+		return token;
+	}
+
+	/**
+	 * Returns the number of pooled tokens, including expired ones not yet
+	 * dropped.
+	 * 
+	 * @return number of pooled tokens
+	 */
+	public int size() {
+		synchronized (tokens) {
+			return tokens.size();
+		}
+	}
+
+	private void countTake(final long now) {
+		if (now - windowStart >= RATE_WINDOW) {
+			lastWindowTakes = now - windowStart < 2 * RATE_WINDOW ? windowTakes
+					: 0;
+			windowStart = now;
+			windowTakes = 0;
+		}
+		windowTakes++;
+	}
+
+	private int missing() {
+		long now = System.currentTimeMillis();
+		synchronized (tokens) {
+			while (!tokens.isEmpty()
+					&& now - tokens.peekFirst().mintedAt >= maxAge) {
+				tokens.pollFirst();
+			}
+			int target = Math.min(maxSize,
+					Math.max(windowTakes, lastWindowTakes));
+			return target - tokens.size();
+		}
+	}
+
+	private void refill() {
+		if (missing() <= 0 || !refilling.compareAndSet(false, true)) {
+			return;
+		}
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (missing() > 0) {
+						AccessGrant token = consumer.getRequestToken(
+								reqTokenURL, callbackURL);
+						synchronized (tokens) {
+							tokens.addLast(new Entry(token,
+									System.currentTimeMillis()));
+						}
+					}
+				} catch (Exception e) {
+					logger.warn("Failed to fetch request token from "
+							+ reqTokenURL, e);
+				} finally {
+					refilling.set(false);
+				}
+			}
+		};
+		// executed directly, so that the deadline of the caller is not
+		// carried over to the refill
+		try {
+			AsyncUtil.getDefaultExecutor().execute(task);
+		} catch (RejectedExecutionException e) {
+			logger.warn("Request token refill rejected", e);
+			refilling.set(false);
+		}
+	}
+
+	private static class Settings {
+		final int maxSize;
+		final long maxAge;
+
+		Settings(final int maxSize, final long maxAge) {
+			this.maxSize = maxSize;
+			this.maxAge = maxAge;
+		}
+	}
+
+	private static class Entry {
+		final AccessGrant token;
+		final long mintedAt;
+
+		Entry(final AccessGrant token, final long mintedAt) {
+			this.token = token;
+			this.mintedAt = mintedAt;
+		}
+	}
+}
@@ -24,37 +24,111 @@
  */
 package org.brickred.socialauth.util;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Encapsulates the HTTP status, headers and the content.
  * 
+ * The connection is handed back to the transport once the content has been
+ * read to the end or the response is closed, so callers which do not read
+ * the content should call {@link #close()}.
+ * 
  * @author tarunn@brickred.com
  * 
  */
 public class Response {
+	private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+	private static final String CONTENT_TYPE_HEADER = "Content-Type";
+	/**
+	 * Largest body read into an array sized from the Content-Length header.
+	 * Larger bodies are read in chunks, so that a wrong header can not
+	 * allocate more memory than the data which actually arrives.
+	 */
+	private static final int MAX_PRESIZE = 1024 * 1024;
 	private final HttpURLConnection _connection;
+	private final Closeable _lease;
+	private final int _status;
+	private final Map<String, List<String>> _headers;
+	private InputStream _content;
+	private InputStream _inputStream;
+	private byte[] _body;
 
 	Response(final HttpURLConnection connection) {
+		this(connection, null);
+	}
+
+	Response(final HttpURLConnection connection, final Closeable lease) {
 		_connection = connection;
+		_lease = lease;
+		_status = -1;
+		_headers = null;
+	}
+
+	/**
+	 * Creates a response whose status and headers have already been received,
+	 * for transports which are not built on HttpURLConnection.
+	 * 
+	 * @param status
+	 *            the HTTP status
+	 * @param headers
+	 *            the response headers
+	 * @param content
+	 *            the response content
+	 */
+	Response(final int status, final Map<String, List<String>> headers,
+			final InputStream content) {
+		_connection = null;
+		_lease = null;
+		_status = status;
+		_headers = new TreeMap<String, List<String>>(
+				String.CASE_INSENSITIVE_ORDER);
+		if (headers != null) {
+			for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+				if (entry.getKey() != null) {
+					_headers.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		_content = content;
 	}
 
 	/**
-	 * Closes the connection
+	 * Closes the response. If the content has been opened, the underlying
+	 * connection is kept alive for reuse, otherwise it is disconnected.
 	 * 
 	 * @throws IOException
 	 */
 	public void close() throws IOException {
-		_connection.disconnect();
+		try {
+			if (_inputStream != null) {
+				_inputStream.close();
+			} else if (_connection != null) {
+				_connection.disconnect();
+			} else if (_content != null) {
+				_content.close();
+			}
+		} finally {
+			release();
+		}
 	}
 
 	public String getHeader(final String name) {
-		return _connection.getHeaderField(name);
+		if (_connection != null) {
+			return _connection.getHeaderField(name);
+		}
+		List<String> values = _headers.get(name);
+		return values == null || values.isEmpty() ? null : values.get(0);
 	}
 
 	/**
@@ -64,7 +138,18 @@ public class Response {
 	 * @throws IOException
 	 */
 	public InputStream getInputStream() throws IOException {
-		return _connection.getInputStream();
+		if (_inputStream == null) {
+			try {
+				if (_connection != null) {
+					_content = _connection.getInputStream();
+				}
+				_inputStream = new ReleasingInputStream(_content);
+			} catch (IOException e) {
+				release();
+				throw e;
+			}
+		}
+		return _inputStream;
 	}
 
 	/**
@@ -74,14 +159,35 @@ public class Response {
 	 */
 	public int getStatus() {
 		try {
-			return _connection.getResponseCode();
+			return readStatus();
 		} catch (IOException e) {
 			return 404;
 		}
 	}
 
 	/**
-	 * Gets the response content as String using given encoding
+	 * Reads the HTTP status. Unlike {@link #getStatus()}, it fails if the
+	 * response could not be received.
+	 * 
+	 * @return the HTTP status
+	 * @throws IOException
+	 */
+	int readStatus() throws IOException {
+		if (_connection == null) {
+			return _status;
+		}
+		try {
+			return _connection.getResponseCode();
+		} catch (IOException e) {
+			release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the response content as String. The content is decoded with the
+	 * charset given in the Content-Type header, or with the given encoding if
+	 * the header does not specify one.
 	 * 
 	 * @param encoding
 	 *            the encoding type
@@ -90,22 +196,204 @@ public class Response {
 	 */
 	public String getResponseBodyAsString(final String encoding)
 			throws Exception {
-		String line = null;
-		BufferedReader reader = null;
-		StringBuffer sb = new StringBuffer();
-
-		if (Constants.GZIP_CONTENT_ENCODING.equals(_connection
-				.getHeaderField(Constants.CONTENT_ENCODING_HEADER))) {
-			reader = new BufferedReader(
-					new InputStreamReader(new GZIPInputStream(
-							_connection.getInputStream()), encoding));
-		} else {
-			reader = new BufferedReader(new InputStreamReader(
-					_connection.getInputStream(), encoding));
-		}
-		while ((line = reader.readLine()) != null) {
-			sb.append(line);
-		}
-		return sb.toString();
+		byte[] body = getBodyAsBytes();
+		return new String(body, 0, body.length, getCharset(encoding));
+	}
+
+	/**
+	 * Gets the response content as bytes. Gzip content is decompressed. The
+	 * content is read once and kept, so this method can be called more than
+	 * once.
+	 * 
+	 * @return Response body
+	 * @throws IOException
+	 */
+	public byte[] getBodyAsBytes() throws IOException {
+		if (_body != null) {
+			return _body;
+		}
+		InputStream in = getInputStream();
+		try {
+			if (isGzip()) {
+				_body = readChunks(new GZIPInputStream(in, BufferPool.CHUNK_SIZE));
+			} else {
+				int length = getContentLength();
+				_body = length >= 0 && length <= MAX_PRESIZE ? readFully(in,
+						length) : readChunks(in);
+			}
+		} finally {
+			in.close();
+		}
+		return _body;
+	}
+
+	/**
+	 * Writes the response content to the given stream without holding it in
+	 * memory. Gzip content is decompressed.
+	 * 
+	 * @param out
+	 *            stream to write the content to
+	 * @return number of bytes written
+	 * @throws IOException
+	 */
+	public long writeTo(final OutputStream out) throws IOException {
+		if (_body != null) {
+			out.write(_body);
+			return _body.length;
+		}
+		InputStream in = getInputStream();
+		byte[] buf = BufferPool.acquire();
+		long total = 0;
+		try {
+			InputStream src = isGzip() ? new GZIPInputStream(in,
+					BufferPool.CHUNK_SIZE) : in;
+			int n;
+			while ((n = src.read(buf)) != -1) {
+				out.write(buf, 0, n);
+				total += n;
+			}
+		} finally {
+			BufferPool.release(buf);
+			in.close();
+		}
+		return total;
+	}
+
+	private boolean isGzip() {
+		return Constants.GZIP_CONTENT_ENCODING
+				.equals(getHeader(Constants.CONTENT_ENCODING_HEADER));
+	}
+
+	private int getContentLength() {
+		String value = getHeader(CONTENT_LENGTH_HEADER);
+		if (value != null) {
+			try {
+				long length = Long.parseLong(value.trim());
+				if (length <= Integer.MAX_VALUE) {
+					return (int) length;
+				}
+			} catch (NumberFormatException e) {
+				// fall back to reading chunks
+			}
+		}
+		return -1;
+	}
+
+	private Charset getCharset(final String encoding) {
+		String contentType = getHeader(CONTENT_TYPE_HEADER);
+		if (contentType != null) {
+			int idx = contentType.toLowerCase().indexOf("charset=");
+			if (idx != -1) {
+				String name = contentType.substring(idx + 8);
+				int end = name.indexOf(';');
+				if (end != -1) {
+					name = name.substring(0, end);
+				}
+				name = name.trim().replace("\"", "").replace("'", "");
+				try {
+					return Charset.forName(name);
+				} catch (IllegalArgumentException e) {
+					// unknown charset, use the given encoding
+				}
+			}
+		}
+		return Charset.forName(encoding);
+	}
+
+	private static byte[] readFully(final InputStream in, final int length)
+			throws IOException {
+		byte[] body = new byte[length];
+		int off = 0;
+		while (off < length) {
+			int n = in.read(body, off, length - off);
+			if (n == -1) {
+				byte[] truncated = new byte[off];
+				System.arraycopy(body, 0, truncated, 0, off);
+				return truncated;
+			}
+			off += n;
+		}
+		return body;
+	}
+
+	private static byte[] readChunks(final InputStream in) throws IOException {
+		List<byte[]> chunks = new ArrayList<byte[]>();
+		byte[] current = BufferPool.acquire();
+		int pos = 0;
+		int total = 0;
+		try {
+			int n;
+			while ((n = in.read(current, pos, current.length - pos)) != -1) {
+				pos += n;
+				total += n;
+				if (pos == current.length) {
+					chunks.add(current);
+					current = BufferPool.acquire();
+					pos = 0;
+				}
+			}
+			byte[] body = new byte[total];
+			int off = 0;
+			for (byte[] chunk : chunks) {
+				System.arraycopy(chunk, 0, body, off, chunk.length);
+				off += chunk.length;
+			}
+			System.arraycopy(current, 0, body, off, pos);
+			return body;
+		} finally {
+			for (byte[] chunk : chunks) {
+				BufferPool.release(chunk);
+			}
+			BufferPool.release(current);
+		}
+	}
+
+	private void release() {
+		if (_lease != null) {
+			try {
+				_lease.close();
+			} catch (IOException e) {
+				// lease release does not fail
+			}
+		}
+	}
+
+	/**
+	 * Hands the connection back to the transport when the content has been
+	 * read to the end or closed.
+	 */
+	private class ReleasingInputStream extends FilterInputStream {
+
+		ReleasingInputStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				release();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len)
+				throws IOException {
+			int n = super.read(b, off, len);
+			if (n == -1) {
+				release();
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
 	}
 }
@@ -0,0 +1,134 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+/**
+ * Budget which bounds the number of retries to a share of the requests, so
+ * that retries cannot multiply the load on a provider which is already
+ * failing. Each request adds a fraction of a retry to the budget, and each
+ * retry takes one whole retry from it. A small number of retries per second
+ * is always allowed, so that occasional errors on a quiet host are retried
+ * as well.
+ * 
+ */
+public class RetryBudget {
+
+	/**
+	 * Default number of retries earned by each request
+	 */
+	public static final double DEFAULT_RATIO = 0.1;
+
+	/**
+	 * Default number of retries allowed per second regardless of the budget
+	 */
+	public static final int DEFAULT_MIN_PER_SECOND = 10;
+
+	/**
+	 * Default maximum number of retries which can be saved up
+	 */
+	public static final int DEFAULT_MAX_BALANCE = 100;
+
+	private final double ratio;
+	private final int minPerSecond;
+	private final int maxBalance;
+	private double balance;
+	private long second;
+	private int usedThisSecond;
+	private long exhausted;
+
+	/**
+	 * Creates a budget with the default ratio and minimum.
+	 */
+	public RetryBudget() {
+		this(DEFAULT_RATIO, DEFAULT_MIN_PER_SECOND, DEFAULT_MAX_BALANCE);
+	}
+
+	/**
+	 * 
+	 * @param ratio
+	 *            number of retries earned by each request, for example 0.1
+	 *            allows one retry for every ten requests
+	 * @param minPerSecond
+	 *            number of retries allowed per second regardless of the
+	 *            budget
+	 * @param maxBalance
+	 *            maximum number of retries which can be saved up
+	 */
+	public RetryBudget(final double ratio, final int minPerSecond,
+			final int maxBalance) {
+		this.ratio = ratio;
+		this.minPerSecond = minPerSecond;
+		this.maxBalance = maxBalance;
+	}
+
+	/**
+	 * Records a request, adding to the budget.
+	 */
+	public synchronized void deposit() {
+		balance = Math.min(maxBalance, balance + ratio);
+	}
+
+	/**
+	 * Takes one retry from the budget.
+	 * 
+	 * @return true if the retry may be made, false if the budget is used up
+	 */
+	public synchronized boolean tryWithdraw() {
+		long now = System.nanoTime() / 1000000000L;
+		if (now != second) {
+			second = now;
+			usedThisSecond = 0;
+		}
+		if (usedThisSecond < minPerSecond) {
+			usedThisSecond++;
+			return true;
+		}
+		if (balance >= 1) {
+			balance -= 1;
+			return true;
+		}
+		exhausted++;
+		return false;
+	}
+
+	/**
+	 * Returns the number of retries which can currently be made, besides
+	 * those allowed per second.
+	 * 
+	 * @return number of retries
+	 */
+	public synchronized double getBalance() {
+		return balance;
+	}
+
+	/**
+	 * Returns the number of retries refused because the budget was used up.
+	 * 
+	 * @return number of refused retries
+	 */
+	public synchronized long getExhausted() {
+		return exhausted;
+	}
+}
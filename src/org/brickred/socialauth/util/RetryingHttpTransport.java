@@ -0,0 +1,430 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.brickred.socialauth.exception.DeadlineExceededException;
+import org.brickred.socialauth.exception.ServiceUnavailableException;
+import org.brickred.socialauth.exception.SocialAuthException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transport which retries GET requests which fail with a transient error: an
+ * I/O error such as a reset connection, or a status of 408, 429, 500, 502,
+ * 503 or 504. Other methods are not idempotent and are never retried.
+ * 
+ * Retries wait for a random time between zero and an exponentially growing
+ * delay, capped at a maximum, so that clients which failed together do not
+ * retry together. A "Retry-After" header in the response is honored instead,
+ * unless it asks for a longer wait than the maximum, in which case the
+ * response is returned as is. A 429 is only retried when it has such a
+ * header; otherwise the response is returned at once, so that a
+ * {@link RequestThrottle} can wait for the rate limit window instead of the
+ * retries spending it. No retry is made if its wait would pass the
+ * {@link Deadline} of the calling thread, or if the {@link RetryBudget} of
+ * the host is used up. Requests refused by a {@link GuardedHttpTransport}
+ * are not retried either.
+ * 
+ * Requests signed with OAuth 1.0, in the "Authorization" header or with an
+ * "oauth_signature" parameter, are not retried: their nonce and timestamp
+ * are spent by the first attempt, and the provider would reject a resent
+ * copy of them.
+ * 
+ * It is installed with {@link HttpUtil#setTransport(HttpTransport)}, or with
+ * the "http.retry" property of the configuration.
+ * 
+ */
+public class RetryingHttpTransport implements HttpTransport {
+
+	/**
+	 * Default maximum number of attempts of a request, including the first
+	 */
+	public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+	/**
+	 * Default delay in milliseconds before the first retry
+	 */
+	public static final long DEFAULT_BASE_DELAY = 100L;
+
+	/**
+	 * Default maximum delay in milliseconds before a retry
+	 */
+	public static final long DEFAULT_MAX_DELAY = 2000L;
+
+	/**
+	 * Default maximum "Retry-After" in milliseconds which is waited for
+	 */
+	public static final long DEFAULT_MAX_RETRY_AFTER = 5000L;
+
+	private static final Logger logger = LoggerFactory
+			.getLogger(RetryingHttpTransport.class);
+
+	private final HttpTransport transport;
+	private final ConcurrentMap<String, HostStats> stats = new ConcurrentHashMap<String, HostStats>();
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long baseDelay = DEFAULT_BASE_DELAY;
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+	private volatile long maxRetryAfter = DEFAULT_MAX_RETRY_AFTER;
+
+	/**
+	 * 
+	 * @param transport
+	 *            the transport which makes the requests
+	 */
+	public RetryingHttpTransport(final HttpTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * Returns the transport which makes the requests.
+	 * 
+	 * @return the wrapped transport
+	 */
+	public HttpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the maximum number of attempts of a request, including the first.
+	 * 
+	 * @param maxAttempts
+	 *            maximum number of attempts, 1 disables retries
+	 */
+	public void setMaxAttempts(final int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Sets the delays before retries.
+	 * 
+	 * @param baseDelay
+	 *            delay in milliseconds before the first retry, doubled for
+	 *            every further retry
+	 * @param maxDelay
+	 *            maximum delay in milliseconds
+	 */
+	public void setDelays(final long baseDelay, final long maxDelay) {
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Sets the maximum "Retry-After" which is waited for. Responses asking for
+	 * a longer wait are not retried.
+	 * 
+	 * @param maxRetryAfter
+	 *            maximum wait in milliseconds
+	 */
+	public void setMaxRetryAfter(final long maxRetryAfter) {
+		this.maxRetryAfter = maxRetryAfter;
+	}
+
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final String body, final Map<String, String> header)
+			throws Exception {
+		if (!MethodType.GET.toString().equals(requestMethod)
+				|| isSigned(urlStr, header)) {
+			return transport.execute(urlStr, requestMethod, body, header);
+		}
+		HostStats host = getStats(new URL(urlStr).getHost());
+		host.budget.deposit();
+		host.requests.incrementAndGet();
+		long start = System.nanoTime();
+		for (int attempt = 1;; attempt++) {
+			long attemptStart = System.nanoTime();
+			Response response = null;
+			Exception error = null;
+			long delay = -1;
+			try {
+				response = transport.execute(urlStr, requestMethod, body,
+						header);
+				int status = response.readStatus();
+				if (isRetryable(status)) {
+					delay = getRetryAfter(response);
+					if (delay > maxRetryAfter) {
+						delay = -1;
+					} else if (delay < 0 && status != 429) {
+						// a 429 without Retry-After is left to the
+						// RequestThrottle, which knows when the limit resets
+						delay = getBackoff(attempt);
+					}
+				}
+			} catch (Exception e) {
+				if (!isRetryable(e)) {
+					throw e;
+				}
+				error = e;
+				delay = getBackoff(attempt);
+			}
+			if (delay < 0 || attempt >= maxAttempts
+					|| !canWait(delay) || !host.budget.tryWithdraw()) {
+				if (attempt > 1) {
+					host.addedLatency
+							.addAndGet((attemptStart - start) / 1000000L);
+				}
+				if (error != null) {
+					throw error;
+				}
+				return response;
+			}
+			logger.debug("Retrying " + urlStr + " in " + delay + " ms after "
+					+ (error != null ? error.toString() : "status "
+							+ response.getStatus()));
+			host.retries.incrementAndGet();
+			if (response != null) {
+				close(response);
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SocialAuthException(e);
+			}
+		}
+	}
+
+	/**
+	 * Makes the multipart request without retries, as its content can only be
+	 * read once.
+	 */
+	@Override
+	public Response execute(final String urlStr, final String requestMethod,
+			final Map<String, String> params, final Map<String, String> header,
+			final InputStream inputStream, final String fileName,
+			final String fileParamName) throws Exception {
+		return transport.execute(urlStr, requestMethod, params, header,
+				inputStream, fileName, fileParamName);
+	}
+
+	private static boolean isSigned(final String urlStr,
+			final Map<String, String> header) {
+		if (urlStr.contains("oauth_signature=")) {
+			return true;
+		}
+		if (header != null) {
+			for (Map.Entry<String, String> entry : header.entrySet()) {
+				if ("Authorization".equalsIgnoreCase(entry.getKey())
+						&& entry.getValue() != null
+						&& entry.getValue().contains("oauth_signature=")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isRetryable(final int status) {
+		return status == 408 || status == 429 || status == 500
+				|| status == 502 || status == 503 || status == 504;
+	}
+
+	private static boolean isRetryable(final Exception e) {
+		boolean io = false;
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof DeadlineExceededException
+					|| t instanceof ServiceUnavailableException
+					|| t instanceof InterruptedException) {
+				return false;
+			}
+			if (t instanceof IOException) {
+				io = true;
+			}
+		}
+		return io && !Thread.currentThread().isInterrupted();
+	}
+
+	private long getBackoff(final int attempt) {
+		long ceiling = maxDelay;
+		if (attempt < 32) {
+			ceiling = Math.min(maxDelay, baseDelay << (attempt - 1));
+		}
+		return ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+
+	/**
+	 * Returns the wait in milliseconds asked for by the "Retry-After" header,
+	 * given either in seconds or as an HTTP date.
+	 * 
+	 * @return wait in milliseconds, or -1 if there is no valid header
+	 */
+	static long getRetryAfter(final Response response) {
+		String value = response.getHeader("Retry-After");
+		if (value == null || value.trim().isEmpty()) {
+			return -1;
+		}
+		value = value.trim();
+		try {
+			return Math.max(0, Long.parseLong(value) * 1000L);
+		} catch (NumberFormatException e) {
+			// not in seconds, try date
+		}
+		SimpleDateFormat format = new SimpleDateFormat(
+				"EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			Date date = format.parse(value);
+			return Math.max(0, date.getTime() - System.currentTimeMillis());
+		} catch (Exception e) {
+			logger.debug("Invalid Retry-After header : " + value);
+			return -1;
+		}
+	}
+
+	private static boolean canWait(final long delay) {
+		Deadline deadline = Deadline.current();
+		return deadline == null || deadline.remaining() > delay;
+	}
+
+	private static void close(final Response response) {
+		try {
+			response.close();
+		} catch (IOException e) {
+			logger.debug("Failed to close response", e);
+		}
+	}
+
+	private HostStats getStats(final String host) {
+		HostStats hostStats = stats.get(host);
+		if (hostStats == null) {
+			hostStats = new HostStats();
+			HostStats existing = stats.putIfAbsent(host, hostStats);
+			if (existing != null) {
+				hostStats = existing;
+			}
+		}
+		return hostStats;
+	}
+
+	/**
+	 * Returns the retry statistics of every host which has been called, keyed
+	 * by host.
+	 * 
+	 * @return metrics of the hosts
+	 */
+	public Map<String, HostMetrics> getMetrics() {
+		Map<String, HostMetrics> metrics = new TreeMap<String, HostMetrics>();
+		for (Map.Entry<String, HostStats> entry : stats.entrySet()) {
+			metrics.put(entry.getKey(), new HostMetrics(entry.getKey(),
+					entry.getValue()));
+		}
+		return metrics;
+	}
+
+	@Override
+	public void setProxyConfig(final String host, final int port) {
+		transport.setProxyConfig(host, port);
+	}
+
+	@Override
+	public void setConnectionTimeout(final int timeout) {
+		transport.setConnectionTimeout(timeout);
+	}
+
+	@Override
+	public void setReadTimeout(final int timeout) {
+		transport.setReadTimeout(timeout);
+	}
+
+	private static class HostStats {
+		final RetryBudget budget = new RetryBudget();
+		final AtomicLong requests = new AtomicLong();
+		final AtomicLong retries = new AtomicLong();
+		final AtomicLong addedLatency = new AtomicLong();
+	}
+
+	/**
+	 * Snapshot of the retry statistics of one host.
+	 */
+	public static class HostMetrics {
+		private final String host;
+		private final long requests;
+		private final long retries;
+		private final long exhausted;
+		private final long addedLatency;
+
+		HostMetrics(final String host, final HostStats stats) {
+			this.host = host;
+			requests = stats.requests.get();
+			retries = stats.retries.get();
+			exhausted = stats.budget.getExhausted();
+			addedLatency = stats.addedLatency.get();
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		/**
+		 * @return number of GET requests
+		 */
+		public long getRequests() {
+			return requests;
+		}
+
+		/**
+		 * @return number of retries made
+		 */
+		public long getRetries() {
+			return retries;
+		}
+
+		/**
+		 * @return number of retries refused because the budget was used up
+		 */
+		public long getExhausted() {
+			return exhausted;
+		}
+
+		/**
+		 * @return total time in milliseconds spent on failed attempts and
+		 *         waits before retries
+		 */
+		public long getAddedLatency() {
+			return addedLatency;
+		}
+
+		@Override
+		public String toString() {
+			return host + " [requests=" + requests + ", retries=" + retries
+					+ ", exhausted=" + exhausted + ", addedLatency="
+					+ addedLatency + "]";
+		}
+	}
+}
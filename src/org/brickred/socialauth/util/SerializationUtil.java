@@ -0,0 +1,279 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+
+package org.brickred.socialauth.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.brickred.socialauth.Permission;
+
+/**
+ * Helper methods for the compact binary form written by the
+ * <code>Externalizable</code> classes of socialauth.
+ * 
+ */
+public class SerializationUtil {
+
+	private static final int TYPE_NULL = 0;
+	private static final int TYPE_STRING = 1;
+	private static final int TYPE_INTEGER = 2;
+	private static final int TYPE_LONG = 3;
+	private static final int TYPE_BOOLEAN = 4;
+	private static final int TYPE_DOUBLE = 5;
+	private static final int TYPE_OBJECT = 6;
+
+	/**
+	 * Writes an unsigned variable length integer.
+	 * 
+	 * @param out
+	 *            the output
+	 * @param value
+	 *            non negative value
+	 * @throws IOException
+	 */
+	public static void writeVarInt(final DataOutput out, final int value)
+			throws IOException {
+		int v = value;
+		while ((v & ~0x7f) != 0) {
+			out.writeByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	/**
+	 * Reads an unsigned variable length integer.
+	 * 
+	 * @param in
+	 *            the input
+	 * @return the value
+	 * @throws IOException
+	 */
+	public static int readVarInt(final DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	/**
+	 * Writes a string, which may be null, as UTF-8 bytes prefixed by length.
+	 * 
+	 * @param out
+	 *            the output
+	 * @param str
+	 *            the string
+	 * @throws IOException
+	 */
+	public static void writeString(final DataOutput out, final String str)
+			throws IOException {
+		if (str == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		byte bytes[] = str.getBytes(Constants.ENCODING);
+		writeVarInt(out, bytes.length + 1);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutput, String)}.
+	 * 
+	 * @param in
+	 *            the input
+	 * @return the string, which may be null
+	 * @throws IOException
+	 */
+	public static String readString(final DataInput in) throws IOException {
+		int len = readVarInt(in);
+		if (len == 0) {
+			return null;
+		}
+		byte bytes[] = new byte[len - 1];
+		in.readFully(bytes);
+		return new String(bytes, Constants.ENCODING);
+	}
+
+	/**
+	 * Writes a permission by its scope.
+	 * 
+	 * @param out
+	 *            the output
+	 * @param permission
+	 *            the permission, which may be null
+	 * @throws IOException
+	 */
+	public static void writePermission(final DataOutput out,
+			final Permission permission) throws IOException {
+		writeString(out, permission == null ? null : permission.toString());
+	}
+
+	/**
+	 * Reads a permission written by
+	 * {@link #writePermission(DataOutput, Permission)}.
+	 * 
+	 * @param in
+	 *            the input
+	 * @return the permission, which may be null
+	 * @throws IOException
+	 */
+	public static Permission readPermission(final DataInput in)
+			throws IOException {
+		return toPermission(readString(in));
+	}
+
+	/**
+	 * Returns the permission with the given scope, as returned by its
+	 * toString method.
+	 * 
+	 * @param scope
+	 *            the scope, which may be null
+	 * @return the permission, or null if the scope is null
+	 */
+	public static Permission toPermission(final String scope) {
+		if (scope == null) {
+			return null;
+		}
+		Permission permissions[] = { Permission.ALL, Permission.DEFAULT,
+				Permission.AUTHENTICATE_ONLY, Permission.CUSTOM };
+		for (Permission p : permissions) {
+			if (p.toString().equals(scope)) {
+				return p;
+			}
+		}
+		return Permission.DEFAULT;
+	}
+
+	/**
+	 * Writes a map of attributes. Strings, numbers and booleans are written
+	 * in binary form; other serializable values are written as objects and
+	 * remaining values, like JSON objects, as their string form.
+	 * 
+	 * @param out
+	 *            the output
+	 * @param attributes
+	 *            the attributes, which may be null
+	 * @throws IOException
+	 */
+	public static void writeAttributes(final ObjectOutput out,
+			final Map<String, Object> attributes) throws IOException {
+		if (attributes == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		writeVarInt(out, attributes.size() + 1);
+		for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+			writeString(out, entry.getKey());
+			Object value = entry.getValue();
+			if (value == null) {
+				out.writeByte(TYPE_NULL);
+			} else if (value instanceof String) {
+				out.writeByte(TYPE_STRING);
+				writeString(out, (String) value);
+			} else if (value instanceof Integer) {
+				out.writeByte(TYPE_INTEGER);
+				out.writeInt((Integer) value);
+			} else if (value instanceof Long) {
+				out.writeByte(TYPE_LONG);
+				out.writeLong((Long) value);
+			} else if (value instanceof Boolean) {
+				out.writeByte(TYPE_BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			} else if (value instanceof Double) {
+				out.writeByte(TYPE_DOUBLE);
+				out.writeDouble((Double) value);
+			} else if (value instanceof Serializable) {
+				out.writeByte(TYPE_OBJECT);
+				out.writeObject(value);
+			} else {
+				out.writeByte(TYPE_STRING);
+				writeString(out, value.toString());
+			}
+		}
+	}
+
+	/**
+	 * Reads a map of attributes written by
+	 * {@link #writeAttributes(ObjectOutput, Map)}.
+	 * 
+	 * @param in
+	 *            the input
+	 * @return the attributes, which may be null
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	public static Map<String, Object> readAttributes(final ObjectInput in)
+			throws IOException, ClassNotFoundException {
+		int size = readVarInt(in);
+		if (size == 0) {
+			return null;
+		}
+		Map<String, Object> attributes = new HashMap<String, Object>();
+		for (int i = 1; i < size; i++) {
+			String key = readString(in);
+			int type = in.readUnsignedByte();
+			Object value;
+			switch (type) {
+			case TYPE_NULL:
+				value = null;
+				break;
+			case TYPE_STRING:
+				value = readString(in);
+				break;
+			case TYPE_INTEGER:
+				value = in.readInt();
+				break;
+			case TYPE_LONG:
+				value = in.readLong();
+				break;
+			case TYPE_BOOLEAN:
+				value = in.readBoolean();
+				break;
+			case TYPE_DOUBLE:
+				value = in.readDouble();
+				break;
+			case TYPE_OBJECT:
+				value = in.readObject();
+				break;
+			default:
+				throw new IOException("Unknown attribute type : " + type);
+			}
+			attributes.put(key, value);
+		}
+		return attributes;
+	}
+}
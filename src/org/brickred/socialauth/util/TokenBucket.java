@@ -0,0 +1,162 @@
+/*
+ ===========================================================================
+ Copyright (c) 2010 BrickRed Technologies Limited
+
+ Permission is hereby granted, free of charge, to any person obtaining a copy
+ of this software and associated documentation files (the "Software"), to deal
+ in the Software without restriction, including without limitation the rights
+ to use, copy, modify, merge, publish, distribute, sub-license, and/or sell
+ copies of the Software, and to permit persons to whom the Software is
+ furnished to do so, subject to the following conditions:
+
+ The above copyright notice and this permission notice shall be included in
+ all copies or substantial portions of the Software.
+
+ THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ THE SOFTWARE.
+ ===========================================================================
+
+ */
+package org.brickred.socialauth.util;
+
+/**
+ * Token bucket which spaces out the requests of a rate limit. The bucket
+ * holds up to a maximum number of tokens, which are refilled at a steady
+ * rate; a request takes one token. Requests may take tokens ahead of time,
+ * in which case they are told how long to wait before they are sent.
+ * 
+ * The limits can be learned from the provider: {@link #update(int, int, long)}
+ * sets the tokens to what the provider reports as remaining, and paces them
+ * over the time left until its window resets, and {@link #block(long)} stops
+ * all requests for a while after the provider has refused one.
+ * 
+ */
+public class TokenBucket {
+
+	private final double defaultRate;
+	private int capacity;
+	private double rate;
+	private double tokens;
+	private long last;
+	private long resetAt;
+
+	/**
+	 * Creates a full bucket.
+	 * 
+	 * @param requests
+	 *            number of requests allowed per period, which is also the
+	 *            maximum number of tokens
+	 * @param period
+	 *            period in milliseconds
+	 */
+	public TokenBucket(final int requests, final long period) {
+		if (requests < 1 || period < 1) {
+			throw new IllegalArgumentException(
+					"Requests and period must be at least 1");
+		}
+		capacity = requests;
+		defaultRate = (double) requests / period;
+		rate = defaultRate;
+		tokens = requests;
+		last = System.nanoTime();
+	}
+
+	/**
+	 * Takes a token for a request.
+	 * 
+	 * @return time in milliseconds the request has to wait before it is sent
+	 */
+	public synchronized long reserve() {
+		long now = System.nanoTime();
+		refill(now);
+		tokens -= 1;
+		if (tokens >= 0) {
+			return 0;
+		}
+		double debt = -tokens;
+		long byRate = rate > 0 ? (long) Math.ceil(debt / rate)
+				: Long.MAX_VALUE;
+		if (resetAt == 0) {
+			return byRate;
+		}
+		long untilReset = Math.max(0, (resetAt - now) / 1000000L);
+		long afterReset = debt <= capacity ? 0 : (long) Math
+				.ceil((debt - capacity) / defaultRate);
+		return Math.min(byRate, untilReset + afterReset);
+	}
+
+	/**
+	 * Gives back a token taken by {@link #reserve()} for a request which is
+	 * not sent.
+	 */
+	public synchronized void cancel() {
+		tokens = Math.min(capacity, tokens + 1);
+	}
+
+	/**
+	 * Updates the bucket with the rate limit reported by the provider.
+	 * 
+	 * @param limit
+	 *            number of requests allowed per window, or -1 if unknown
+	 * @param remaining
+	 *            number of requests left in the current window
+	 * @param resetIn
+	 *            time in milliseconds until the window resets, or -1 if
+	 *            unknown
+	 */
+	public synchronized void update(final int limit, final int remaining,
+			final long resetIn) {
+		long now = System.nanoTime();
+		refill(now);
+		if (limit > 0) {
+			capacity = limit;
+		}
+		tokens = Math.min(tokens, Math.min(capacity, remaining));
+		if (resetIn >= 0) {
+			resetAt = now + Math.max(1, resetIn) * 1000000L;
+			rate = Math.max(0, remaining) / (double) Math.max(1000, resetIn);
+		}
+	}
+
+	/**
+	 * Stops all requests for the given time, after the provider has refused
+	 * a request because of its rate limit.
+	 * 
+	 * @param millis
+	 *            time in milliseconds
+	 */
+	public synchronized void block(final long millis) {
+		long now = System.nanoTime();
+		refill(now);
+		tokens = Math.min(tokens, 0);
+		rate = 0;
+		resetAt = now + Math.max(1, millis) * 1000000L;
+	}
+
+	/**
+	 * Returns the number of tokens, negative if requests are waiting.
+	 * 
+	 * @return number of tokens
+	 */
+	public synchronized double getTokens() {
+		refill(System.nanoTime());
+		return tokens;
+	}
+
+	private void refill(final long now) {
+		if (resetAt != 0 && now - resetAt >= 0) {
+			tokens = Math.min(capacity, tokens + (resetAt - last) / 1000000.0
+					* rate + capacity);
+			rate = defaultRate;
+			last = resetAt;
+			resetAt = 0;
+		}
+		tokens = Math.min(capacity, tokens + (now - last) / 1000000.0 * rate);
+		last = now;
+	}
+}
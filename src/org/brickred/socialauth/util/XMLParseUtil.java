@@ -31,7 +31,13 @@ import java.io.InputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -44,6 +50,24 @@ import org.w3c.dom.NodeList;
  */
 public class XMLParseUtil {
 
+	private static final Logger logger = LoggerFactory
+			.getLogger(XMLParseUtil.class);
+
+	private static volatile boolean externalEntitiesDisabled = true;
+
+	private static volatile ThreadLocal<DocumentBuilder> documentBuilders = newDocumentBuilderCache(true);
+
+	private static final XMLInputFactory INPUT_FACTORY;
+	static {
+		INPUT_FACTORY = XMLInputFactory.newInstance();
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+				Boolean.TRUE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		INPUT_FACTORY.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+	}
+
 	/**
 	 * Static helper function to get the element data of the specified node.
 	 * 
@@ -138,24 +162,158 @@ public class XMLParseUtil {
 		return doc.getDocumentElement();
 	}
 
+	/**
+	 * Creates a streaming reader over the given input stream. Unlike
+	 * {@link #loadXmlResource(InputStream)} it does not build the document in
+	 * memory, so large feeds can be read in a single forward pass. DTDs and
+	 * external entities are not loaded.
+	 * 
+	 * @param in
+	 *            Input Stream.
+	 * @return streaming reader positioned before the root element
+	 * @throws XMLStreamException
+	 *             if the reader can not be created
+	 */
+	public static XMLStreamReader createXMLStreamReader(final InputStream in)
+			throws XMLStreamException {
+		return INPUT_FACTORY.createXMLStreamReader(in);
+	}
+
+	/**
+	 * Checks whether the reader is positioned at an element with the given
+	 * tag name. The name is matched against the qualified name of the
+	 * element, in the same way as <code>Element.getElementsByTagName</code>.
+	 * 
+	 * @param reader
+	 *            reader positioned at a start or end tag
+	 * @param tagName
+	 *            qualified tag name, for example "title" or "gd:email"
+	 * @return true if the current element has the given tag name
+	 */
+	public static boolean isElement(final XMLStreamReader reader,
+			final String tagName) {
+		String prefix = reader.getPrefix();
+		if (prefix == null || prefix.length() == 0) {
+			return tagName.equals(reader.getLocalName());
+		}
+		return tagName.length() == prefix.length() + 1
+				+ reader.getLocalName().length()
+				&& tagName.startsWith(prefix)
+				&& tagName.charAt(prefix.length()) == ':'
+				&& tagName.endsWith(reader.getLocalName());
+	}
+
+	/**
+	 * Reads the text of the element at which the reader is positioned, in
+	 * the same way as {@link #getElementData(Node)}: only the text which is an
+	 * immediate child of the element is returned. The reader is left at the
+	 * end tag of the element.
+	 * 
+	 * @param reader
+	 *            reader positioned at a start tag
+	 * @return the text of the element, or an empty string if it has no text
+	 * @throws XMLStreamException
+	 *             on any error
+	 */
+	public static String getElementData(final XMLStreamReader reader)
+			throws XMLStreamException {
+		StringBuilder ret = new StringBuilder();
+		int depth = 0;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == 0) {
+					break;
+				}
+				depth--;
+			} else if (depth == 0
+					&& (event == XMLStreamConstants.CHARACTERS
+							|| event == XMLStreamConstants.CDATA
+							|| event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE)) {
+				ret.append(reader.getText());
+			}
+		}
+		return ret.toString();
+	}
+
 	/**
 	 * Returns a <code>DocumentBuilder</code>, which is used for parsing XML
-	 * documents.
+	 * documents. Builders are created once per thread from a shared factory
+	 * and reset before they are handed out, so the returned builder must not
+	 * be passed to another thread.
 	 * 
 	 * @return a <code>DocumentBuilder</code> which is used for parsing XML
 	 *         documents. Never <code>null</code>.
 	 */
 	public static DocumentBuilder getDocumentBuilder() {
-		try {
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-			dbf.setNamespaceAware(true);
-			dbf.setValidating(false);
-
-			return dbf.newDocumentBuilder();
-		} catch (ParserConfigurationException e) {
-			e.printStackTrace();
-			throw new RuntimeException(e.getMessage());
+		DocumentBuilder db = documentBuilders.get();
+		db.reset();
+		return db;
+	}
+
+	/**
+	 * Enables or disables loading of external DTDs and external entities
+	 * while parsing documents with {@link #loadXmlResource(InputStream)}.
+	 * Loading is disabled by default, which also avoids network fetches
+	 * during parsing.
+	 * 
+	 * @param disabled
+	 *            true to disable loading of external DTDs and entities
+	 */
+	public static synchronized void setExternalEntitiesDisabled(
+			final boolean disabled) {
+		if (externalEntitiesDisabled != disabled) {
+			externalEntitiesDisabled = disabled;
+			documentBuilders = newDocumentBuilderCache(disabled);
+		}
+	}
+
+	/**
+	 * Returns whether loading of external DTDs and entities is disabled.
+	 * 
+	 * @return true if external DTDs and entities are not loaded
+	 */
+	public static boolean isExternalEntitiesDisabled() {
+		return externalEntitiesDisabled;
+	}
+
+	private static ThreadLocal<DocumentBuilder> newDocumentBuilderCache(
+			final boolean disableExternalEntities) {
+		final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		dbf.setValidating(false);
+		if (disableExternalEntities) {
+			dbf.setExpandEntityReferences(false);
+			try {
+				dbf.setFeature(
+						"http://xml.org/sax/features/external-general-entities",
+						false);
+				dbf.setFeature(
+						"http://xml.org/sax/features/external-parameter-entities",
+						false);
+				dbf.setFeature(
+						"http://apache.org/xml/features/nonvalidating/load-external-dtd",
+						false);
+			} catch (ParserConfigurationException e) {
+				logger.warn("XML parser does not support disabling external entities",
+						e);
+			}
 		}
+		return new ThreadLocal<DocumentBuilder>() {
+			@Override
+			protected DocumentBuilder initialValue() {
+				try {
+					synchronized (dbf) {
+						return dbf.newDocumentBuilder();
+					}
+				} catch (ParserConfigurationException e) {
+					e.printStackTrace();
+					throw new RuntimeException(e.getMessage());
+				}
+			}
+		};
 	}
 
 }